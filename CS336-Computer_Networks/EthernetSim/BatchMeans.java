@@ -0,0 +1,89 @@
+/*
+ * BatchMeans :
+ *      Online batch-means estimate of one metric.  The measured part of a run
+ *      is cut into equal batches of simulated time and each batch contributes
+ *      one observation; with batches long enough to be nearly independent the
+ *      spread of those observations gives a confidence interval for the mean.
+ *      Mean and variance are kept with Welford's update, so nothing grows with
+ *      the number of batches.
+ */
+
+public class BatchMeans
+{
+    // two-sided 95% Student t quantiles for 1 to 30 degrees of freedom
+    private static final double[] T_95 = {
+	12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+	2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+	2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    private static final double Z_95 = 1.960;
+
+    private String name;
+
+    private int count = 0;
+    private double mean = 0;
+    private double sumSquares = 0;
+
+    public BatchMeans(String name)
+    {
+	this.name = name;
+    }
+
+    public void add(double batchMean)
+    {
+	count++;
+
+	double delta = batchMean - mean;
+
+	mean += delta / count;
+	sumSquares += delta * (batchMean - mean);
+    }
+
+    public String getName()
+    {
+	return name;
+    }
+
+    public int getCount()
+    {
+	return count;
+    }
+
+    public double getMean()
+    {
+	return mean;
+    }
+
+    // 95% confidence half-width of the mean, infinite until there are two batches
+    public double getHalfWidth()
+    {
+	if(count < 2)
+	    {
+		return Double.POSITIVE_INFINITY;
+	    }
+
+	int degrees = count - 1;
+	double t = (degrees <= T_95.length) ? T_95[degrees - 1] : Z_95;
+
+	return t * Math.sqrt(sumSquares / degrees / count);
+    }
+
+    // half-width as a fraction of the mean; a metric stuck at zero counts as settled
+    public double getRelativePrecision()
+    {
+	double halfWidth = getHalfWidth();
+
+	if(mean == 0)
+	    {
+		return (halfWidth == 0) ? 0 : Double.POSITIVE_INFINITY;
+	    }
+
+	return halfWidth / Math.abs(mean);
+    }
+
+    public String toString()
+    {
+	return name + " " + mean + " +/- " + getHalfWidth() + " over " + count + " batches";
+    }
+}
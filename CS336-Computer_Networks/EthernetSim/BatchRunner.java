@@ -0,0 +1,212 @@
+/*
+ * BatchRunner :
+ *      Runs a whole sweep without asking anything, for batch machines.  The
+ *      sweep comes from a SweepSpec; progress goes to standard error one line
+ *      per finished run, and standard output gets nothing but a one-line JSON
+ *      summary at the end.  Run the same spec again after an interruption
+ *      and it picks up each seed's experiment where it stopped, skipping the
+ *      runs that already have an experiment_summary row.
+ *
+ *      java BatchRunner [spec file] [key=value]...
+ *
+ *      Exits 0 when every run was recorded, 1 when some failed, 2 for a bad
+ *      spec and 3 when the database is unavailable.
+ */
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import Ethernet.*;
+
+public class BatchRunner
+{
+    static Logger logger = Logger.getLogger(BatchRunner.class);
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_RUNS_FAILED = 1;
+    public static final int EXIT_BAD_SPEC = 2;
+    public static final int EXIT_NO_DATABASE = 3;
+
+    // the summary's status for each exit code
+    private static final String[] STATUS = { "ok", "runs_failed", "bad_spec", "no_database" };
+
+    public static void main(String[] args)
+    {
+	URL confResource = BatchRunner.class.getResource("/l4j.properties");
+
+	if(confResource != null)
+	    {
+		PropertyConfigurator.configure(confResource);
+	    }
+
+	System.exit(Run(args));
+    }
+
+    public static int Run(String[] args)
+    {
+	SweepSpec spec;
+
+	try
+	    {
+		spec = SweepSpec.Parse(args);
+	    }
+	catch(IOException e)
+	    {
+		return badSpec(e.getMessage());
+	    }
+	catch(IllegalArgumentException e)
+	    {
+		return badSpec(e.getMessage());
+	    }
+
+	long wallStart = System.currentTimeMillis();
+
+	SimMetrics.StartFromProperty();
+
+	SQLiteLogger db = new SQLiteLogger(spec.dbFile);
+
+	StringBuilder experiments = new StringBuilder();
+	int planned = 0;
+	int skipped = 0;
+	int failed = 0;
+	int exitCode = EXIT_OK;
+
+	String fingerprint = spec.getFingerprint();
+
+	try
+	    {
+		for(long seed : spec.seeds)
+		    {
+			int experimentID = spec.resume ? db.FindExperiment(seed, fingerprint) : -1;
+			boolean resumed = experimentID > 0;
+			Set<String> completed = new HashSet<String>();
+
+			if(resumed)
+			    {
+				completed = db.LoadCompletedRuns(experimentID);
+
+				logger.info("Resuming experiment " + experimentID + " (seed " + seed + "), "
+					    + completed.size() + " runs already recorded");
+			    }
+			else
+			    {
+				experimentID = db.CreateNewExperiment(System.currentTimeMillis() / 1000L, new Date().toString(),
+								      spec.config.numHosts, seed, fingerprint);
+			    }
+
+			if(experimentID <= 0)
+			    {
+				logger.error("Database " + spec.dbFile + " unavailable");
+
+				exitCode = EXIT_NO_DATABASE;
+				break;
+			    }
+
+			System.err.println("Experiment " + experimentID + ", seed " + seed + (resumed ? ", resumed" : ""));
+
+			SimConfig config = spec.config.copy();
+			config.seed = seed;
+
+			SweepRunner sweep = new SweepRunner(config, spec.threads);
+
+			sweep.setCompleted(completed);
+			sweep.setProgress(System.err);
+			sweep.setTraceDir(spec.traceDir);
+			sweep.setReplicas(spec.replicas);
+
+			sweep.run(spec.hostCounts, spec.packetSizes, spec.trials, db, experimentID);
+
+			planned += spec.getRunsPerSeed();
+			skipped += sweep.getSkipped();
+			failed += sweep.getFailed();
+
+			experiments.append(experiments.length() > 0 ? "," : "")
+			    .append("{\"id\":").append(experimentID)
+			    .append(",\"seed\":").append(seed)
+			    .append(",\"resumed\":").append(resumed)
+			    .append(",\"skipped\":").append(sweep.getSkipped())
+			    .append(",\"completed\":").append(sweep.getSubmitted() - sweep.getFailed())
+			    .append(",\"failed\":").append(sweep.getFailed())
+			    .append("}");
+		    }
+	    }
+	finally
+	    {
+		db.close();
+	    }
+
+	if(exitCode == EXIT_OK && failed > 0)
+	    {
+		exitCode = EXIT_RUNS_FAILED;
+	    }
+
+	String summary = "{\"status\":\"" + STATUS[exitCode] + "\",\"exit_code\":" + exitCode
+	    + ",\"db\":\"" + jsonEscape(spec.dbFile) + "\",\"planned\":" + planned + ",\"skipped\":" + skipped
+	    + ",\"completed\":" + (planned - skipped - failed) + ",\"failed\":" + failed
+	    + ",\"wall_millis\":" + (System.currentTimeMillis() - wallStart)
+	    + ",\"experiments\":[" + experiments + "]}";
+
+	System.out.println(summary);
+
+	if(spec.summaryFile != null)
+	    {
+		try
+		    {
+			Writer out = new FileWriter(spec.summaryFile);
+
+			out.write(summary + System.getProperty("line.separator"));
+			out.close();
+		    }
+		catch(IOException e)
+		    {
+			logger.error("Unable to write summary " + spec.summaryFile + ": " + e.getMessage());
+		    }
+	    }
+
+	return exitCode;
+    }
+
+    private static int badSpec(String message)
+    {
+	System.err.println("Bad sweep spec: " + message);
+	System.err.println("usage: BatchRunner [spec file] [key=value]...  (see SweepSpec)");
+
+	System.out.println("{\"status\":\"" + STATUS[EXIT_BAD_SPEC] + "\",\"exit_code\":" + EXIT_BAD_SPEC
+			   + ",\"error\":\"" + jsonEscape(String.valueOf(message)) + "\"}");
+
+	return EXIT_BAD_SPEC;
+    }
+
+    private static String jsonEscape(String s)
+    {
+	StringBuilder escaped = new StringBuilder();
+
+	for(int i = 0; i < s.length(); i++)
+	    {
+		char c = s.charAt(i);
+
+		if(c == '"' || c == '\\')
+		    {
+			escaped.append('\\').append(c);
+		    }
+		else if(c < 0x20)
+		    {
+			escaped.append(String.format("\\u%04x", (int)c));
+		    }
+		else
+		    {
+			escaped.append(c);
+		    }
+	    }
+
+	return escaped.toString();
+    }
+}
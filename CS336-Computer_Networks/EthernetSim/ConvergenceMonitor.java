@@ -0,0 +1,239 @@
+/*
+ * ConvergenceMonitor :
+ *      Watches the metrics a SimulationRun reports - throughput, average
+ *      transmission delay and the Jain fairness index - one batch of simulated
+ *      time at a time, and says when all of their confidence intervals have
+ *      narrowed to the configured precision.  The run loop only has to compare
+ *      the clock against getNextBatchEnd(); the hosts' counters are read once
+ *      per batch.
+ *
+ *      Delay and fairness are ratios over the whole measured period, and a
+ *      short batch's own fairness is nothing like the run's (the capture
+ *      effect evens out only over time), so the batches are combined with a
+ *      jackknife: each metric is recomputed with one batch left out and the
+ *      resulting pseudo-values go through BatchMeans.  For throughput this is
+ *      exactly the plain batch-means interval.
+ */
+
+import java.util.ArrayList;
+
+import Ethernet.*;
+
+public class ConvergenceMonitor
+{
+    private static final int THROUGHPUT = 0;
+    private static final int DELAY = 1;
+    private static final int FAIRNESS = 2;
+
+    private SimConfig config;
+    private ArrayList<Host> hostList;
+
+    // every host's counters as of the start of the current batch
+    private int[] lastBits;
+    private int[] lastPackets;
+    private double[] lastDelay;
+
+    // what each host did in each batch so far, and in all of them together
+    private ArrayList<int[]> batchBits = new ArrayList<int[]>();
+    private ArrayList<int[]> batchPackets = new ArrayList<int[]>();
+    private ArrayList<double[]> batchDelay = new ArrayList<double[]>();
+    private ArrayList<Double> batchTime = new ArrayList<Double>();
+
+    private double[] sumBits;
+    private double[] sumPackets;
+    private double[] sumDelay;
+    private double sumTime = 0;
+
+    private BatchMeans[] estimates;
+
+    private double batchStart;
+    private double nextBatchEnd;
+
+    // scratch space for leaving a batch out
+    private double[] bits;
+    private double[] packets;
+    private double[] delay;
+
+    public ConvergenceMonitor(SimConfig config, ArrayList<Host> hostList)
+    {
+	this.config = config;
+	this.hostList = hostList;
+
+	int n = hostList.size();
+
+	lastBits = new int[n];
+	lastPackets = new int[n];
+	lastDelay = new double[n];
+
+	sumBits = new double[n];
+	sumPackets = new double[n];
+	sumDelay = new double[n];
+
+	bits = new double[n];
+	packets = new double[n];
+	delay = new double[n];
+
+	estimates = new BatchMeans[] { new BatchMeans("throughput"), new BatchMeans("avg delay"),
+				       new BatchMeans("fairness") };
+    }
+
+    // call right after the hosts start measuring
+    public void start(double now)
+    {
+	for(int i = 0; i < hostList.size(); i++)
+	    {
+		Host h = hostList.get(i);
+
+		lastBits[i] = h.reportTotalBitsSent();
+		lastPackets[i] = h.reportTotalPacketsSent();
+		lastDelay[i] = h.reportTotalTransDelay();
+	    }
+
+	batchStart = now;
+	nextBatchEnd = now + config.batchLength;
+    }
+
+    public double getNextBatchEnd()
+    {
+	return nextBatchEnd;
+    }
+
+    public int getBatches()
+    {
+	return batchTime.size();
+    }
+
+    // Closes the batch that ends at or before now.  Returns true once enough
+    // batches are in and every metric is within targetPrecision.
+    public boolean endBatch(double now)
+    {
+	int n = hostList.size();
+
+	int[] thisBits = new int[n];
+	int[] thisPackets = new int[n];
+	double[] thisDelay = new double[n];
+
+	for(int i = 0; i < n; i++)
+	    {
+		Host h = hostList.get(i);
+
+		thisBits[i] = h.reportTotalBitsSent() - lastBits[i];
+		thisPackets[i] = h.reportTotalPacketsSent() - lastPackets[i];
+		thisDelay[i] = h.reportTotalTransDelay() - lastDelay[i];
+
+		lastBits[i] += thisBits[i];
+		lastPackets[i] += thisPackets[i];
+		lastDelay[i] += thisDelay[i];
+
+		sumBits[i] += thisBits[i];
+		sumPackets[i] += thisPackets[i];
+		sumDelay[i] += thisDelay[i];
+	    }
+
+	batchBits.add(thisBits);
+	batchPackets.add(thisPackets);
+	batchDelay.add(thisDelay);
+	batchTime.add(now - batchStart);
+	sumTime += now - batchStart;
+
+	batchStart = now;
+	nextBatchEnd = now + config.batchLength;
+
+	int batches = batchTime.size();
+
+	if(batches < Math.max(2, config.minBatches))
+	    {
+		return false;
+	    }
+
+	double[] whole = metrics(-1);
+
+	for(int m = 0; m < estimates.length; m++)
+	    {
+		estimates[m] = new BatchMeans(estimates[m].getName());
+	    }
+
+	for(int k = 0; k < batches; k++)
+	    {
+		double[] without = metrics(k);
+
+		for(int m = 0; m < estimates.length; m++)
+		    {
+			estimates[m].add(batches * whole[m] - (batches - 1) * without[m]);
+		    }
+	    }
+
+	for(int m = 0; m < estimates.length; m++)
+	    {
+		if(estimates[m].getRelativePrecision() > config.targetPrecision)
+		    {
+			return false;
+		    }
+	    }
+
+	return true;
+    }
+
+    // throughput, average delay and fairness the way SimulationRun.summarize
+    // works them out, over every batch but the one given (-1 for none)
+    private double[] metrics(int leaveOut)
+    {
+	int n = hostList.size();
+
+	double time = sumTime;
+
+	for(int i = 0; i < n; i++)
+	    {
+		bits[i] = sumBits[i];
+		packets[i] = sumPackets[i];
+		delay[i] = sumDelay[i];
+	    }
+
+	if(leaveOut >= 0)
+	    {
+		int[] outBits = batchBits.get(leaveOut);
+		int[] outPackets = batchPackets.get(leaveOut);
+		double[] outDelay = batchDelay.get(leaveOut);
+
+		time -= batchTime.get(leaveOut);
+
+		for(int i = 0; i < n; i++)
+		    {
+			bits[i] -= outBits[i];
+			packets[i] -= outPackets[i];
+			delay[i] -= outDelay[i];
+		    }
+	    }
+
+	double totalBits = 0;
+	double delaySum = 0;
+	int delayHosts = 0;
+
+	ArrayList<Double> throughputs = new ArrayList<Double>();
+
+	for(int i = 0; i < n; i++)
+	    {
+		totalBits += bits[i];
+		throughputs.add(Double.valueOf(bits[i] / 1000));
+
+		if(packets[i] > 0)
+		    {
+			delaySum += delay[i] / packets[i];
+			delayHosts++;
+		    }
+	    }
+
+	double[] result = new double[3];
+
+	result[THROUGHPUT] = totalBits / time;
+	result[DELAY] = (delayHosts > 0) ? delaySum / delayHosts : 0;
+	result[FAIRNESS] = (totalBits > 0) ? Initializer.CalculateFairness(throughputs) : 0;
+
+	return result;
+    }
+
+    public String toString()
+    {
+	return estimates[THROUGHPUT] + "; " + estimates[DELAY] + "; " + estimates[FAIRNESS];
+    }
+}
@@ -1,16 +1,153 @@
 /*
  * EtherState :
  *     This class is a serializable data structure containing the host states, the events left to process
- *     by SimulatedTime
+ *     by SimulatedTime.  A snapshot holds the run's SimConfig, the clock, the pending timeline and every
+ *     host's transmitter/receiver state, counters and random stream, packed into one compact byte array.
+ *     Restoring it gives back a SimulatedTime that carries on exactly where the original was; restoring
+ *     it with a fork key reseeds the hosts so that many runs can branch off one warmed-up network.
  */
 
 import org.apache.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
 import Ethernet.*;
 
 
-public class EtherState
+public class EtherState implements Serializable
 {
-    
-}
+    static Logger logger = Logger.getLogger(EtherState.class);
+
+    private static final int MAGIC = 0x45535435; // "EST5"
+
+    private static final long serialVersionUID = 1L;
+
+    // what the run that took the snapshot was measuring
+    private int activeHosts;
+    private int packetSize;
+
+    private byte[] data;
+
+    private EtherState(int activeHosts, int packetSize, byte[] data)
+    {
+	this.activeHosts = activeHosts;
+	this.packetSize = packetSize;
+	this.data = data;
+    }
+
+    public static EtherState capture(SimulatedTime stime, int activeHosts, int packetSize) throws IOException
+    {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+	DataOutputStream out = new DataOutputStream(bytes);
+
+	stime.writeState(out);
+	out.close();
+
+	return new EtherState(activeHosts, packetSize, bytes.toByteArray());
+    }
+
+    // an exact copy of the captured simulation
+    public SimulatedTime restore() throws IOException
+    {
+	return SimulatedTime.readState(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    // a copy whose hosts draw from fresh streams picked out by forkKey
+    public SimulatedTime restore(long forkKey) throws IOException
+    {
+	SimulatedTime stime = restore();
+
+	for(Host h : stime.getHosts())
+	    {
+		h.reseed(forkKey);
+	    }
+
+	return stime;
+    }
+
+    public int getActiveHosts()
+    {
+	return activeHosts;
+    }
 
+    public int getPacketSize()
+    {
+	return packetSize;
+    }
+
+    // bytes of simulation state, not counting the small header
+    public int size()
+    {
+	return data.length;
+    }
+
+    public void writeTo(OutputStream os) throws IOException
+    {
+	DataOutputStream out = new DataOutputStream(os);
+
+	out.writeInt(MAGIC);
+	out.writeInt(activeHosts);
+	out.writeInt(packetSize);
+	out.writeInt(data.length);
+	out.write(data);
+	out.flush();
+    }
+
+    public static EtherState readFrom(InputStream is) throws IOException
+    {
+	DataInputStream in = new DataInputStream(is);
+
+	if(in.readInt() != MAGIC)
+	    {
+		throw new IOException("Not an EtherState snapshot");
+	    }
+
+	int activeHosts = in.readInt();
+	int packetSize = in.readInt();
+	byte[] data = new byte[in.readInt()];
+
+	in.readFully(data);
+
+	return new EtherState(activeHosts, packetSize, data);
+    }
+
+    public void save(File file) throws IOException
+    {
+	FileOutputStream out = new FileOutputStream(file);
+
+	try
+	    {
+		writeTo(out);
+	    }
+	finally
+	    {
+		out.close();
+	    }
+
+	logger.info("Saved " + data.length + " byte snapshot to " + file);
+    }
+
+    public static EtherState load(File file) throws IOException
+    {
+	FileInputStream in = new FileInputStream(file);
+
+	try
+	    {
+		return readFrom(in);
+	    }
+	finally
+	    {
+		in.close();
+	    }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * CalendarEventQueue:
+ *      Brown's calendar queue.  Events are hashed by TimeStart into a ring of
+ *      buckets, each bucket a sorted list chained through SimulatedEvent.next,
+ *      and the dequeue scan walks the ring one bucket width at a time.  The
+ *      ring doubles or halves as the population changes and the bucket width
+ *      is re-estimated from the spacing of the next few events, so add/poll
+ *      stay O(1) amortized and remove only walks a single bucket.
+ */
+
+package Ethernet;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class CalendarEventQueue implements EventQueue {
+
+    // Hosts schedule on the order of propagation delays (~1-16 bits), preambles
+    // and jams (32-64 bits) and gaps (96 bits); one preamble wide keeps the early
+    // buckets short until the first resize samples the real spacing.
+    public static final double DEFAULT_BUCKET_WIDTH = 64.0;
+
+    // never let a burst of near-simultaneous events shrink buckets below a bit time
+    private static final double MIN_BUCKET_WIDTH = 1.0;
+
+    private static final int MIN_BUCKETS = 64;
+    private static final int SAMPLE_SIZE = 25;
+
+    private SimulatedEvent[] buckets;
+    private int mask;
+    private double width;
+    private int size = 0;
+
+    // virtual bucket, floor(time / width), that the dequeue scan is sitting on
+    private long currentVb = 0;
+
+    private boolean resizeEnabled = true;
+    private SimulatedEvent[] sample = new SimulatedEvent[SAMPLE_SIZE];
+
+    public CalendarEventQueue() {
+	this(MIN_BUCKETS, DEFAULT_BUCKET_WIDTH);
+    }
+
+    public CalendarEventQueue(int numBuckets, double bucketWidth) {
+	int n = MIN_BUCKETS;
+	while (n < numBuckets) {
+	    n <<= 1;
+	}
+
+	buckets = new SimulatedEvent[n];
+	mask = n - 1;
+	width = Math.max(bucketWidth, MIN_BUCKET_WIDTH);
+    }
+
+    private long virtualBucket(double time) {
+	return (long)(time / width);
+    }
+
+    public void add(SimulatedEvent e) {
+	insert(e);
+	size++;
+
+	if (resizeEnabled && size > 2 * buckets.length) {
+	    resize(buckets.length * 2);
+	}
+    }
+
+    // sorted insert; equal events go after the ones already there so ties stay FIFO
+    private void insert(SimulatedEvent e) {
+	long vb = virtualBucket(e.TimeStart);
+
+	if (vb < currentVb) {
+	    currentVb = vb;
+	}
+
+	int i = (int)(vb & mask);
+	SimulatedEvent cur = buckets[i];
+
+	if (cur == null || precedes(e, cur)) {
+	    e.next = cur;
+	    buckets[i] = e;
+	    return;
+	}
+
+	while (cur.next != null && !precedes(e, cur.next)) {
+	    cur = cur.next;
+	}
+
+	e.next = cur.next;
+	cur.next = e;
+    }
+
+    // TimeStart order with seq breaking ties, same as SimulatedEvent.compareTo
+    private static boolean precedes(SimulatedEvent a, SimulatedEvent b) {
+	return a.TimeStart < b.TimeStart || (a.TimeStart == b.TimeStart && a.seq < b.seq);
+    }
+
+    public SimulatedEvent poll() {
+	if (size == 0) {
+	    return null;
+	}
+
+	int i = locateMin();
+	SimulatedEvent e = buckets[i];
+
+	buckets[i] = e.next;
+	e.next = null;
+	size--;
+
+	shrinkIfSparse();
+
+	return e;
+    }
+
+    public SimulatedEvent peek() {
+	if (size == 0) {
+	    return null;
+	}
+
+	return buckets[locateMin()];
+    }
+
+    public boolean remove(SimulatedEvent e) {
+	int i = (int)(virtualBucket(e.TimeStart) & mask);
+
+	SimulatedEvent prev = null;
+	SimulatedEvent cur = buckets[i];
+
+	while (cur != null && !cur.equals(e)) {
+	    prev = cur;
+	    cur = cur.next;
+	}
+
+	if (cur == null) {
+	    return false;
+	}
+
+	if (prev == null) {
+	    buckets[i] = cur.next;
+	} else {
+	    prev.next = cur.next;
+	}
+
+	cur.next = null;
+	size--;
+
+	shrinkIfSparse();
+
+	return true;
+    }
+
+    public SimulatedEvent removeCancelled() {
+	SimulatedEvent removed = null;
+
+	for (int i = 0; i < buckets.length; i++) {
+	    SimulatedEvent prev = null;
+	    SimulatedEvent cur = buckets[i];
+
+	    while (cur != null) {
+		SimulatedEvent next = cur.next;
+
+		if (cur.cancelled) {
+		    if (prev == null) {
+			buckets[i] = next;
+		    } else {
+			prev.next = next;
+		    }
+
+		    cur.next = removed;
+		    removed = cur;
+		    size--;
+		} else {
+		    prev = cur;
+		}
+
+		cur = next;
+	    }
+	}
+
+	shrinkIfSparse();
+
+	return removed;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    // returns the ring index whose head is the earliest pending event and
+    // moves the scan there; the queue must not be empty
+    private int locateMin() {
+	long vb = currentVb;
+
+	// every pending event sits at or after currentVb, so the first head that
+	// belongs to the virtual bucket being scanned is the minimum
+	for (int n = 0; n < buckets.length; n++, vb++) {
+	    SimulatedEvent head = buckets[(int)(vb & mask)];
+
+	    if (head != null && virtualBucket(head.TimeStart) <= vb) {
+		currentVb = vb;
+		return (int)(vb & mask);
+	    }
+	}
+
+	// nothing due within a whole year of buckets, jump straight to the smallest head
+	int best = -1;
+
+	for (int i = 0; i < buckets.length; i++) {
+	    SimulatedEvent head = buckets[i];
+
+	    if (head != null && (best < 0 || precedes(head, buckets[best]))) {
+		best = i;
+	    }
+	}
+
+	currentVb = virtualBucket(buckets[best].TimeStart);
+
+	return best;
+    }
+
+    private void shrinkIfSparse() {
+	if (resizeEnabled && buckets.length > MIN_BUCKETS && size < buckets.length / 2) {
+	    resize(buckets.length / 2);
+	}
+    }
+
+    private void resize(int newSize) {
+	double newWidth = sampleWidth();
+	double scanTime = currentVb * width;
+
+	SimulatedEvent[] old = buckets;
+
+	buckets = new SimulatedEvent[newSize];
+	mask = newSize - 1;
+	width = newWidth;
+	currentVb = virtualBucket(scanTime);
+
+	for (int i = 0; i < old.length; i++) {
+	    SimulatedEvent cur = old[i];
+
+	    while (cur != null) {
+		SimulatedEvent next = cur.next;
+		insert(cur);
+		cur = next;
+	    }
+	}
+    }
+
+    // Brown's estimate: three times the average separation of the next few
+    // events, ignoring separations more than twice the raw average
+    private double sampleWidth() {
+	int n = Math.min(size, SAMPLE_SIZE);
+
+	if (n < 2) {
+	    return width;
+	}
+
+	resizeEnabled = false;
+
+	for (int i = 0; i < n; i++) {
+	    sample[i] = poll();
+	}
+
+	for (int i = 0; i < n; i++) {
+	    add(sample[i]);
+	}
+
+	resizeEnabled = true;
+
+	double avg = (sample[n - 1].TimeStart - sample[0].TimeStart) / (n - 1);
+	double total = 0;
+	int counted = 0;
+
+	for (int i = 1; i < n; i++) {
+	    double sep = sample[i].TimeStart - sample[i - 1].TimeStart;
+
+	    if (sep <= 2.0 * avg) {
+		total += sep;
+		counted++;
+	    }
+
+	    sample[i - 1] = null;
+	}
+
+	sample[n - 1] = null;
+
+	if (counted == 0 || total <= 0) {
+	    return width;
+	}
+
+	return Math.max(3.0 * total / counted, MIN_BUCKET_WIDTH);
+    }
+
+    public Iterator<SimulatedEvent> iterator() {
+	return new Iterator<SimulatedEvent>() {
+	    private int bucket = -1;
+	    private SimulatedEvent nextEvt = null;
+
+	    {
+		advance();
+	    }
+
+	    private void advance() {
+		if (nextEvt != null) {
+		    nextEvt = nextEvt.next;
+		}
+
+		while (nextEvt == null && ++bucket < buckets.length) {
+		    nextEvt = buckets[bucket];
+		}
+	    }
+
+	    public boolean hasNext() {
+		return nextEvt != null;
+	    }
+
+	    public SimulatedEvent next() {
+		if (nextEvt == null) {
+		    throw new NoSuchElementException();
+		}
+
+		SimulatedEvent e = nextEvt;
+		advance();
+		return e;
+	    }
+
+	    public void remove() {
+		throw new UnsupportedOperationException();
+	    }
+	};
+    }
+}
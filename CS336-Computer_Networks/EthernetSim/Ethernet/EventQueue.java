@@ -0,0 +1,30 @@
+/*
+ * EventQueue:
+ *      The pending timeline of a SimulatedTime.  Implementations only have to
+ *      hand back events in TimeStart order; how they get there is up to them.
+ */
+
+package Ethernet;
+
+import java.util.Iterator;
+
+public interface EventQueue {
+
+    public void add(SimulatedEvent e);
+
+    // removes and returns the earliest event, or null if the queue is empty
+    public SimulatedEvent poll();
+
+    // returns the earliest event without removing it, or null if the queue is empty
+    public SimulatedEvent peek();
+
+    public boolean remove(SimulatedEvent e);
+
+    // drops every event marked cancelled and returns them chained through next
+    public SimulatedEvent removeCancelled();
+
+    public int size();
+
+    // walks the pending events in no particular order
+    public Iterator<SimulatedEvent> iterator();
+}
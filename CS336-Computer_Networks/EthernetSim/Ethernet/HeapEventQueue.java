@@ -0,0 +1,60 @@
+/*
+ * HeapEventQueue:
+ *      The original binary heap timeline.  O(log n) add/poll and O(n) remove;
+ *      kept as the reference implementation to check the other queues against.
+ */
+
+package Ethernet;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+public class HeapEventQueue implements EventQueue {
+
+    private PriorityQueue<SimulatedEvent> timeline;
+
+    public HeapEventQueue() {
+	timeline = new PriorityQueue<SimulatedEvent>();
+    }
+
+    public void add(SimulatedEvent e) {
+	timeline.add(e);
+    }
+
+    public SimulatedEvent poll() {
+	return timeline.poll();
+    }
+
+    public SimulatedEvent peek() {
+	return timeline.peek();
+    }
+
+    public boolean remove(SimulatedEvent e) {
+	return timeline.remove(e);
+    }
+
+    public SimulatedEvent removeCancelled() {
+	SimulatedEvent removed = null;
+	Iterator<SimulatedEvent> it = timeline.iterator();
+
+	while (it.hasNext()) {
+	    SimulatedEvent e = it.next();
+
+	    if (e.cancelled) {
+		it.remove();
+		e.next = removed;
+		removed = e;
+	    }
+	}
+
+	return removed;
+    }
+
+    public int size() {
+	return timeline.size();
+    }
+
+    public Iterator<SimulatedEvent> iterator() {
+	return timeline.iterator();
+    }
+}
@@ -1,36 +1,36 @@
 package Ethernet;
-import java.util.UUID;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
 import java.lang.Math;
-import java.util.Random;
 
 public class Host {
 
-    public static boolean FAIRNESS_MODE = false;
-
     public int hostId;	
     int repeaterIndex;
 
-    Transmitter tstate;
-    Receiver rstate;
     SimulatedTime stime;
     SimulatedEvent expectedTransDone;
 
-    Random r = new Random();
-    int transAttempt = 0;
+    // where the rest of this host's state lives, see HostStates
+    HostStates s;
+    int slot;
+
+    // this host's own stream, derived from the trial's (see RandomStream)
+    RandomStream r;
     int processTime;
     //int packetsToSend = 2;
     int packetSize;
 
-    int packetsSent = 0;
-    int packetsDropped = 0;
+    // how the next packet comes along, from the Topology
+    byte arrival;
+    double arrivalA;
+    double arrivalB;
 
-    double totalCollisionSlots = 0;
-    //double avgCollisionSlotVal = 0;
-    int numCollisionPeriods = 0;
-    double totalTransDelay = 0;
-    //double avgTransDelay = 0;
-    double packRdyTime = 0;
+    // the same two quantities sample by sample, for percentiles and spread
+    LogLinearHistogram delayHistogram = new LogLinearHistogram();
+    LogLinearHistogram backoffHistogram = new LogLinearHistogram();
 
     //HashMap<UUID, SimulatedEvent> upcomingEvents;
 
@@ -40,53 +40,63 @@ public class Host {
 
     //int repeaterIndex;
 
-    public static double PREAMBLE_TIME = 64.0;
-    public static double GAP_TIME = 96.0;
-    public static double JAMMING_TIME = 32.0;
-    public static double SLOT_TIME = 512.0;
+    public static final double PREAMBLE_TIME = 64.0;
+    public static final double GAP_TIME = 96.0;
+    public static final double JAMMING_TIME = 32.0;
+    public static final double SLOT_TIME = 512.0;
 
 
     // number of feet per bit
-    public static double FEET_PER_BIT = 65.6167979;
+    public static final double FEET_PER_BIT = 65.6167979;
 
 
     // distance to nearest repeater in feet
-    public static double DISTANCE_TO_REPEATER = 20;
+    public static final double DISTANCE_TO_REPEATER = 20;
     // distance between two hosts excluding the distance of their repeaters
-    public static double BIT_DISTANCE_BETWEEN_TWO_HOSTS = 2 * DISTANCE_TO_REPEATER / FEET_PER_BIT;
+    public static final double BIT_DISTANCE_BETWEEN_TWO_HOSTS = 2 * DISTANCE_TO_REPEATER / FEET_PER_BIT;
 
     // accounts for the preamble of each packet, and interpacket gap, but we are excluding the CRC since that is part of the header which
     //   is accounted for in the packet size
-    public static int OVERHEAD_BITS_PER_PACKET = 20 * 8;
+    public static final int OVERHEAD_BITS_PER_PACKET = 20 * 8;
     
 
-    public static int MAX_PROCESS_TIME = 1250;
-    public static int MIN_PROCESS_TIME = 1000;
+    // per-run settings, shared with our SimulatedTime
+    SimConfig config;
 
 
     public Host(SimulatedTime parentTime, int pSize, int inID)
     {
 	hostId = inID;
+	config = parentTime.getConfig();
+	r = parentTime.getRandomStream().derive(inID);
 
-	// For our fairness test, set up an extremely unfair topology.
-	if (FAIRNESS_MODE) {
-	    // hosts 0-22 are on repeater 0, host 23 is on repeater 10, 10,000 feet away
-	    repeaterIndex = (inID < 4) ? 0 : 10;
-	} else {
-	    //Set up the topology normally.
-	    Double grpOfSix = new Double(Math.floor(inID / 6.0));
-	    repeaterIndex = grpOfSix.intValue();
-	}
-
-	
+	// groups of six, the fairness test's layout or whatever the config describes
+	Topology topology = parentTime.getTopology();
 
+	if (inID >= topology.getNumHosts()) {
+	    throw new IllegalArgumentException("No host " + inID + " in a topology of " + topology);
+	}
 
-	tstate = Transmitter.PREPARING;
-	rstate = Receiver.IDLE;
+	repeaterIndex = topology.getRepeaterOf(inID);
+	setArrival(topology);
 
 	stime = parentTime;
+	s = parentTime.getHostStates();
+	slot = parentTime.getHostBase() + inID;
+
+	s.tstate[slot] = T_PREPARING;
+	s.rstate[slot] = R_IDLE;
+	s.transAttempt[slot] = 0;
+	s.packRdyTime[slot] = 0;
+	s.burstEnds[slot] = 0;
+	s.collisions[slot] = 0;
+	StartMeasuring();
 	
 	// packetSize in host is in bits, but it comes in as bytes
+	if (topology.getPacketBytes(inID) > 0) {
+	    pSize = topology.getPacketBytes(inID);
+	}
+
 	packetSize = pSize * 8;
 
 	//position = curPos;
@@ -95,31 +105,128 @@ public class Host {
 	//upcomingEvents = new HashMap<UUID, SimulatedEvent>();
     }
 
+    // picks the state back up from writeState(); SimulatedTime relinks expectedTransDone
+    Host(SimulatedTime parentTime, DataInput in) throws IOException
+    {
+	stime = parentTime;
+	config = parentTime.getConfig();
+
+	hostId = in.readInt();
+	s = parentTime.getHostStates();
+	slot = parentTime.getHostBase() + hostId;
+
+	repeaterIndex = in.readInt();
+	packetSize = in.readInt();
+	processTime = in.readInt();
+	s.burstEnds[slot] = in.readDouble();
+	setArrival(parentTime.getTopology());
+
+	s.tstate[slot] = in.readByte();
+	s.rstate[slot] = in.readByte();
+	s.transAttempt[slot] = in.readInt();
+	s.packRdyTime[slot] = in.readDouble();
+	s.expectedTransDoneSeq[slot] = in.readLong();
+	s.collisions[slot] = 0;
+
+	s.packetsSent[slot] = in.readInt();
+	s.packetsDropped[slot] = in.readInt();
+	s.totalCollisionSlots[slot] = in.readDouble();
+	s.numCollisionPeriods[slot] = in.readInt();
+	s.totalTransDelay[slot] = in.readDouble();
+	delayHistogram = LogLinearHistogram.readFrom(in);
+	backoffHistogram = LogLinearHistogram.readFrom(in);
+
+	r = RandomStream.readFrom(in);
+    }
+
+    void writeState(DataOutput out) throws IOException
+    {
+	out.writeInt(hostId);
+	out.writeInt(repeaterIndex);
+	out.writeInt(packetSize);
+	out.writeInt(processTime);
+	out.writeDouble(s.burstEnds[slot]);
+
+	out.writeByte(s.tstate[slot]);
+	out.writeByte(s.rstate[slot]);
+	out.writeInt(s.transAttempt[slot]);
+	out.writeDouble(s.packRdyTime[slot]);
+	out.writeLong(expectedTransDone != null ? s.expectedTransDoneSeq[slot] : -1);
+
+	out.writeInt(s.packetsSent[slot]);
+	out.writeInt(s.packetsDropped[slot]);
+	out.writeDouble(s.totalCollisionSlots[slot]);
+	out.writeInt(s.numCollisionPeriods[slot]);
+	out.writeDouble(s.totalTransDelay[slot]);
+	delayHistogram.writeTo(out);
+	backoffHistogram.writeTo(out);
+
+	r.writeTo(out);
+    }
+
+    // Swaps this host's stream for an independent child picked out by key, so
+    // copies of one snapshot go their own way from here.
+    public void reseed(long forkKey)
+    {
+	r = r.derive(forkKey);
+    }
+
     public void StartMeasuring()
     {
 	//avgTransDelay = 0;
 
-	totalTransDelay = 0;
+	s.totalTransDelay[slot] = 0;
 
 	//avgCollisionSlotVal = 0;
 
-	totalCollisionSlots = 0;
+	s.totalCollisionSlots[slot] = 0;
+
+        s.numCollisionPeriods[slot] = 0;
+
+	s.packetsSent[slot] = 0;
 
-        numCollisionPeriods = 0;
+	s.packetsDropped[slot] = 0;
 
-	packetsSent = 0;
+	delayHistogram.reset();
 
-	packetsDropped = 0;
+	backoffHistogram.reset();
     }
 
+    private void setArrival(Topology topology)
+    {
+	arrival = topology.getArrival(hostId);
+	arrivalA = topology.arrivalA[hostId];
+	arrivalB = topology.arrivalB[hostId];
+    }
+
+    // bit times from the end of one packet until the next is ready to go
     public double RandomProcessTime()
     {
-	return (double)(MIN_PROCESS_TIME + r.nextInt(MAX_PROCESS_TIME - MIN_PROCESS_TIME));
+	switch (arrival) {
+	case Topology.ARRIVAL_UNIFORM:
+	    return arrivalA + r.nextInt((int)(arrivalB - arrivalA));
+	case Topology.ARRIVAL_POISSON:
+	    return r.nextExponential(arrivalA);
+	case Topology.ARRIVAL_ONOFF:
+	    double gap = (double)(config.minProcessTime + r.nextInt(config.maxProcessTime - config.minProcessTime));
+
+	    // once a burst has run out, sit out an off period before the next one
+	    if (stime.getCurrentTime() + gap >= s.burstEnds[slot]) {
+		double off = r.nextExponential(arrivalB);
+
+		s.burstEnds[slot] = stime.getCurrentTime() + off + r.nextExponential(arrivalA);
+		gap += off;
+	    }
+
+	    return gap;
+	default:
+	    return (double)(config.minProcessTime + r.nextInt(config.maxProcessTime - config.minProcessTime));
+	}
     }
 
     public double BitDistanceFromAnotherRepeaterIndex(int otherRptInd)
     {
-	return Math.abs(repeaterIndex - otherRptInd) * 1000.0 / FEET_PER_BIT;
+	return stime.getTopology().getBackboneDelay(repeaterIndex, otherRptInd);
     }
 
     public boolean isMyEvent(SimulatedEvent e){
@@ -129,14 +236,11 @@ public class Host {
     public void scheduleMyEvent(SimulatedEvent.SimEvtType type, double startoffset, boolean justMyself){
        
 	    
-		UUID id = UUID.randomUUID();
-		double currentTime = stime.getCurrentTime();
-		SimulatedEvent event = new SimulatedEvent(id, type, currentTime + startoffset, startoffset, this.hostId, repeaterIndex, justMyself);
-		
-		stime.schedule(event);	
+		SimulatedEvent event = stime.schedule(type, startoffset, this.hostId, repeaterIndex, justMyself);
 
 		if(type == SimulatedEvent.SimEvtType.TRANS_DONE) {
 		    expectedTransDone = event;
+		    s.expectedTransDoneSeq[slot] = event.seq;
 		}
 	    
 	
@@ -145,264 +249,309 @@ public class Host {
 
     public double reportAverageWaitSlots()
     {
-	return totalCollisionSlots / numCollisionPeriods;
+	return s.totalCollisionSlots[slot] / s.numCollisionPeriods[slot];
     }
 
     public int reportTotalCollisionPeriods()
     {
-	return numCollisionPeriods;
+	return s.numCollisionPeriods[slot];
+    }
+
+    public long reportCollisionsSinceStart()
+    {
+	return s.collisions[slot];
     }
 
     public int reportTotalPacketsSent()
     {
-	return packetsSent;
+	return s.packetsSent[slot];
     }
 
     public int reportTotalPacketsDropped()
     {
-	return packetsDropped;
+	return s.packetsDropped[slot];
     }
 
     public int reportTotalBitsSent()
     {
 	// including overhead
-	return (packetSize + OVERHEAD_BITS_PER_PACKET) * packetsSent;
+	return (packetSize + OVERHEAD_BITS_PER_PACKET) * s.packetsSent[slot];
+    }
+
+    public double reportTotalTransDelay()
+    {
+	return s.totalTransDelay[slot];
     }
 
     public double reportAverageTransDelay()
     {
-	return totalTransDelay / packetsSent;
+	return s.totalTransDelay[slot] / s.packetsSent[slot];
+    }
+
+    public LogLinearHistogram reportDelayHistogram()
+    {
+	return delayHistogram;
+    }
+
+    public LogLinearHistogram reportBackoffHistogram()
+    {
+	return backoffHistogram;
+    }
+
+    public void reactToEvent(SimulatedEvent e) {
+	react(e.getEventType().ordinal() * VARIANTS + (isMyEvent(e) ? (e.justMyself ? LOCAL : OWN_BROADCAST) : FOREIGN));
     }
 
-	public void reactToEvent(SimulatedEvent e) {
-
-            double relpos = BIT_DISTANCE_BETWEEN_TWO_HOSTS + BitDistanceFromAnotherRepeaterIndex(e.RepeaterIndexOfHost);
-
-	    //Determine the state changes of the receiver
-	    switch (rstate) {
-
-			case BUSY:				
-				//Line is busy.  If we see the end of a transmission or jamming.
-				if (e.getEventType() == SimulatedEvent.SimEvtType.JAMMING_DONE || 
-				    e.getEventType() == SimulatedEvent.SimEvtType.TRANS_DONE ){
-
-					//If:   The END I see came from another host AND I am supposed to see it.
-					//	Reschedule the END so it's my END and only I can see it.
-					//Else: Take this rescheduled event, now I experience the event, Go to Gap state, 
-					//	and schedule for myself when the gap is over   
-					
-					if ( !isMyEvent(e) && !e.justMyself ){
-					    scheduleMyEvent(e.getEventType(), relpos, true);
-					} else if (e.justMyself && isMyEvent(e)){
-						rstate = Receiver.GAP;
-						scheduleMyEvent(SimulatedEvent.SimEvtType.GAP_DONE, GAP_TIME, true);
-					}
-
-				}
-
-				break;
-			case GAP:
-				//If I see that MY Gap time is over, then schedule a notification to myself that 
-				//My receiver is now idle, and move to the idle state.
-
-				if (isMyEvent(e) && e.getEventType() == SimulatedEvent.SimEvtType.GAP_DONE)  {
-					
-				    //scheduleMyEvent(SimulatedEvent.SimEvtType.R_NOW_IDLE, 0, true);
-				    rstate = Receiver.IDLE;
-				}
-
-				break;
-			case IDLE:				
-
-				//If:	The line is idle and we see the start of a signal
-					
-				if ((e.getEventType() == SimulatedEvent.SimEvtType.JAMMING_START  ||
-				     e.getEventType() == SimulatedEvent.SimEvtType.PREAMBLE_START ||
-				     e.getEventType() == SimulatedEvent.SimEvtType.TRANS_START    ))  {
-					
-					//If:   The START I see came from another host AND I am supposed to see it.
-					//	Reschedule the START so it's my START and only I can see it.
-					//Else: Take this rescheduled event, now I experience the event, Go to BUSY state, 
-					//	and schedule a notification for myself that the receiver has become busy.
-
-					if ( !isMyEvent(e) && !e.justMyself ) {
-					    scheduleMyEvent(e.getEventType(),relpos, true);
-					} else if (e.justMyself && isMyEvent(e)){
-					    //scheduleMyEvent(SimulatedEvent.SimEvtType.R_NOW_BUSY, 0, true);
-					    rstate = Receiver.BUSY;
-					}
-				}
-
-				// if we see a trans_done and it's my own and it is not a pseudo-event, wait gap
-				else if(e.getEventType() == SimulatedEvent.SimEvtType.TRANS_DONE && isMyEvent(e) && !e.justMyself)
-				    {
-					scheduleMyEvent(SimulatedEvent.SimEvtType.GAP_DONE, GAP_TIME, true);
-					rstate = Receiver.GAP;
-				    }
-				
-				break;
+    // A broadcast from another host reaching my repeater.  The Propagator
+    // delivers it, so it plays the part of the private copy each host used to
+    // schedule for itself.
+    public void reactToArrival(SimulatedEvent e) {
+	react(e.getEventType().ordinal() * VARIANTS + LOCAL);
+    }
+
+    // The receiver moves first, and the transmitter then moves on what the
+    // receiver has become, each by one lookup in its transition table.
+    private void react(int evt) {
+	switch (RECEIVER_TABLE[s.rstate[slot] * NUM_EVENTS + evt]) {
+	case RX_BUSY:
+	    s.rstate[slot] = R_BUSY;
+	    break;
+	case RX_GAP:
+	    s.rstate[slot] = R_GAP;
+	    scheduleMyEvent(SimulatedEvent.SimEvtType.GAP_DONE, GAP_TIME, true);
+	    break;
+	case RX_IDLE:
+	    s.rstate[slot] = R_IDLE;
+	    break;
+	}
+
+	switch (TRANSMITTER_TABLE[(s.tstate[slot] * NUM_RECEIVER + s.rstate[slot]) * NUM_EVENTS + evt]) {
+	case TX_PREAMBLE:
+	    startPreamble();
+	    break;
+	case TX_SEND:
+	    scheduleMyEvent(SimulatedEvent.SimEvtType.TRANS_START, 0, false);
+	    scheduleMyEvent(SimulatedEvent.SimEvtType.TRANS_DONE, packetSize, false);
+	    s.tstate[slot] = T_SENDING;
+	    break;
+	case TX_JAM:
+	    startJamming();
+	    break;
+	case TX_COLLIDE:
+	    startJamming();
+	    stime.cancel(expectedTransDone, s.expectedTransDoneSeq[slot]);
+	    break;
+	case TX_BACKOFF:
+	    backOff();
+	    break;
+	case TX_SENT:
+	    // measure delay as current time minus packRdyTime, summed up to divide later
+	    s.totalTransDelay[slot] += stime.getCurrentTime() - s.packRdyTime[slot];
+	    delayHistogram.record(stime.getCurrentTime() - s.packRdyTime[slot]);
+
+	    // successfully sent packet, record it, reset k to 0
+	    s.packetsSent[slot]++;
+	    s.transAttempt[slot] = 0;
+
+	    scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, RandomProcessTime(), true);
+	    s.tstate[slot] = T_PREPARING;
+	    break;
+	case TX_EAGER:
+	    s.tstate[slot] = T_EAGER;
+	    break;
+	case TX_RETRY:
+	    if (!abortIfHopeless()) {
+		startPreamble();
 	    }
-	    
+	    break;
+	case TX_RETRY_EAGER:
+	    if (!abortIfHopeless()) {
+		s.tstate[slot] = T_EAGER;
+	    }
+	    break;
+	}
+    }
 
-	    // determine state changes of the transmitter
-	    switch (tstate) {
-			case EAGER: 
-				//I am eager to send packets, and I see that MY receiver is idle, I start my preamble, and schedule when I end.
-
-			    //if (e.getEventType() == SimulatedEvent.SimEvtType.R_NOW_IDLE && isMyEvent(e)){
-			    if(rstate == Receiver.IDLE){
-				//(rstate == Receiver.IDLE) {
-				    if(transAttempt == 0)
-					{
-					    packRdyTime = stime.getCurrentTime();
-					}
-
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_START, 0, false);
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_DONE, PREAMBLE_TIME, true);
-				    tstate = Transmitter.PREAMBLE;
-				}
-
-				break;
-			case PREAMBLE:
-				// I am transmitting my preamble, when MY preamble is done, 
-				// If:   Receiver is idle, start packet, schedule packet end, go to sending state
-				// Else: Collision occurred so start jamming, schedule jamming end, go to jamming state.
-
-				if (e.getEventType() == SimulatedEvent.SimEvtType.PREAMBLE_DONE && isMyEvent(e) ) {
-				    if (rstate == Receiver.IDLE) {
-					    scheduleMyEvent(SimulatedEvent.SimEvtType.TRANS_START, 0, false);
-					    scheduleMyEvent(SimulatedEvent.SimEvtType.TRANS_DONE, packetSize, false);
-					    tstate = Transmitter.SENDING;
-					} else {
-					    scheduleMyEvent(SimulatedEvent.SimEvtType.JAMMING_START, 0, false);
-					    scheduleMyEvent(SimulatedEvent.SimEvtType.JAMMING_DONE, JAMMING_TIME, false);
-					    tstate = Transmitter.JAMMING;
-					}
-				}
-
-				break;
-			case JAMMING:
-				//If my jamming is done.  Schedule when my backoff will be over
-				//Increment the transAttempt.  Go to WAITING backoff slots state.  
-				
-				if (e.getEventType() == SimulatedEvent.SimEvtType.JAMMING_DONE && isMyEvent(e)) {
-
-				    int maxWaitSlots = 1023; // 2 ^ 10 - 1
-
-				    if(transAttempt < 10)
-					{
-					    Double power = new Double(Math.pow(2.0, transAttempt));
-					    maxWaitSlots = power.intValue();
-					}
-
-				    int numK = r.nextInt(maxWaitSlots);
-
-				    //int avgCollisionSlotVal = 0;
-				    //int numCollisionPeriods = 0;
-
-				    // new average is the old average times number of prior periods + current val / number of periods
-				    //avgCollisionSlotVal = (numCollisionPeriods * avgCollisionSlotVal + numK) / (numCollisionPeriods + 1);
-
-				    // alternatively, just add up the numerator to divide later, duh.
-				    totalCollisionSlots += numK;
-				    numCollisionPeriods++;
-				
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.BACKOFF_DONE,SLOT_TIME *((double)numK), true);
-				 
-				    transAttempt++;
-				    tstate = Transmitter.WAITING;
-				}
-
-				break;
-			case SENDING:
-				//I am sending packets.  
-				//If my receiver has become busy, start jamming, schedule jamming end, go to jamming state
-				//Else: If the transmission is complete, If I have no more to send, I'm done 
-				//	Else: schedule when the next packet will be ready, go to preparing state	   
-			    // if (e.getEventType() == SimulatedEvent.SimEvtType.R_NOW_BUSY && isMyEvent(e)) {
-			    if (rstate == Receiver.BUSY){
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.JAMMING_START, 0, false);
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.JAMMING_DONE, JAMMING_TIME, false);
-				    tstate = Transmitter.JAMMING;
-				    stime.deschedule(expectedTransDone);
-
-				} else if (e.getEventType() == SimulatedEvent.SimEvtType.TRANS_DONE && isMyEvent(e)) {
-				    // measure delay as current time minus packRdyTime, averaged out over packetsSent
-				    //avgTransDelay = ((avgTransDelay * packetsSent) + (stime.getCurrentTime() - packRdyTime)) / (packetsSent + 1);
-
-				// alternatively, sum up transDelay to divide later, duh
-				totalTransDelay += stime.getCurrentTime() - packRdyTime;
-
-				    // successfully sent packet, record it, reset k to 0
-				    packetsSent++;
-				    transAttempt = 0;
-
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, RandomProcessTime(), true);
-				    tstate = Transmitter.PREPARING; 										
-				}
-
-				break;
-			case PREPARING:
-	
-			       // I'm preparing the next packet.  Once MY packet is ready, 
-			       // If the receiver is idle: start preamble, schedule preamble done, go to preamble 
-			       // Else: Go to Eager state
-			       if (e.getEventType() == SimulatedEvent.SimEvtType.PACKET_READY && isMyEvent(e)) {
-					if (rstate == Receiver.IDLE) {
-					    if(transAttempt == 0)
-						{
-						    packRdyTime = stime.getCurrentTime();
-						}
-
-					     scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_START, 0, false);
-					     scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_DONE, PREAMBLE_TIME, true);
-					     tstate = Transmitter.PREAMBLE;
-					} else {
-						tstate = Transmitter.EAGER;
-					}
-				}
-
-			       break;
-			case WAITING:
-
-			    //If I'm waiting the backoff slots, and I've tried way too many times, abort and move on to the next packet, schedule when its done, prepare
-			    if (e.getEventType() == SimulatedEvent.SimEvtType.BACKOFF_DONE && isMyEvent(e)) {
-
-				// if we have attempted to transmit this packet more than 15 times, it's time to abort it
-				if (transAttempt >= 15) {
-
-				    packetsDropped++;
-
-				    // Packet is Aborted
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_ABORTED, 0, true);
-
-				    //packetsToSend--;
-				    transAttempt = 0;
-				    //if (packetsToSend == 0) {
-				    //	tstate = Transmitter.DONE;
-				    //} else {
-
-				    scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, RandomProcessTime(), true);
-				    tstate = Transmitter.PREPARING;
-					//}
-				} 
-				// if the receiver is idle, then start the preamble. Otherwise go to the eager transmitter state
-				else
-				    {
-					if (rstate == Receiver.IDLE) {
-					     scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_START, 0, false);
-					     scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_DONE, PREAMBLE_TIME, true);
-					     tstate = Transmitter.PREAMBLE;
-					} else {
-					     tstate = Transmitter.EAGER;
-					}
-				    }
-				}
-
-				break;
+    private void startPreamble() {
+	if (s.transAttempt[slot] == 0) {
+	    s.packRdyTime[slot] = stime.getCurrentTime();
+	}
+
+	scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_START, 0, false);
+	scheduleMyEvent(SimulatedEvent.SimEvtType.PREAMBLE_DONE, PREAMBLE_TIME, true);
+	s.tstate[slot] = T_PREAMBLE;
+    }
+
+    private void startJamming() {
+	scheduleMyEvent(SimulatedEvent.SimEvtType.JAMMING_START, 0, false);
+	scheduleMyEvent(SimulatedEvent.SimEvtType.JAMMING_DONE, JAMMING_TIME, false);
+	s.tstate[slot] = T_JAMMING;
+    }
+
+    // Schedule when my backoff will be over, increment the transAttempt and
+    // go to WAITING backoff slots state.
+    private void backOff() {
+	int maxWaitSlots = 1023; // 2 ^ 10 - 1
+
+	int attempt = s.transAttempt[slot];
+
+	if (attempt < 10) {
+	    maxWaitSlots = 1 << attempt;
+	}
+
+	int numK = r.nextInt(maxWaitSlots);
+
+	// just add up the numerator to divide later
+	s.totalCollisionSlots[slot] += numK;
+	s.numCollisionPeriods[slot]++;
+	s.collisions[slot]++;
+	backoffHistogram.record(numK);
+
+	scheduleMyEvent(SimulatedEvent.SimEvtType.BACKOFF_DONE, SLOT_TIME * ((double)numK), true);
+
+	s.transAttempt[slot] = attempt + 1;
+	s.tstate[slot] = T_WAITING;
+    }
+
+    // if we have attempted to transmit this packet 15 times, it's time to
+    // abort it and move on to the next one
+    private boolean abortIfHopeless() {
+	if (s.transAttempt[slot] < 15) {
+	    return false;
+	}
+
+	s.packetsDropped[slot]++;
+
+	scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_ABORTED, 0, true);
+
+	s.transAttempt[slot] = 0;
+
+	scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, RandomProcessTime(), true);
+	s.tstate[slot] = T_PREPARING;
+
+	return true;
+    }
+
+    // How a host sees an event: one of its own private events, or a
+    // broadcast from someone else arriving at its repeater (the two look the
+    // same); its own broadcast as it goes out; or an event that is not its own.
+    private static final int LOCAL = 0;
+    private static final int OWN_BROADCAST = 1;
+    private static final int FOREIGN = 2;
+    private static final int VARIANTS = 3;
+
+    private static final int LOCAL_ONLY = 1 << LOCAL;
+    private static final int MINE = (1 << LOCAL) | (1 << OWN_BROADCAST);
+    private static final int ANYONE = MINE | (1 << FOREIGN);
+
+    // Transmitter and Receiver ordinals, as HostStates keeps them
+    private static final byte T_EAGER = (byte)Transmitter.EAGER.ordinal();
+    private static final byte T_PREPARING = (byte)Transmitter.PREPARING.ordinal();
+    private static final byte T_PREAMBLE = (byte)Transmitter.PREAMBLE.ordinal();
+    private static final byte T_SENDING = (byte)Transmitter.SENDING.ordinal();
+    private static final byte T_JAMMING = (byte)Transmitter.JAMMING.ordinal();
+    private static final byte T_WAITING = (byte)Transmitter.WAITING.ordinal();
+
+    private static final byte R_BUSY = (byte)Receiver.BUSY.ordinal();
+    private static final byte R_GAP = (byte)Receiver.GAP.ordinal();
+    private static final byte R_IDLE = (byte)Receiver.IDLE.ordinal();
+
+    private static final int NUM_EVENTS = SimulatedEvent.SimEvtType.values().length * VARIANTS;
+    private static final int NUM_RECEIVER = Receiver.values().length;
+
+    // receiver moves
+    private static final byte RX_STAY = 0;
+    private static final byte RX_BUSY = 1;
+    private static final byte RX_GAP = 2;
+    private static final byte RX_IDLE = 3;
+
+    // transmitter moves
+    private static final byte TX_STAY = 0;
+    private static final byte TX_PREAMBLE = 1;
+    private static final byte TX_SEND = 2;
+    private static final byte TX_JAM = 3;
+    private static final byte TX_COLLIDE = 4;
+    private static final byte TX_BACKOFF = 5;
+    private static final byte TX_SENT = 6;
+    private static final byte TX_EAGER = 7;
+    private static final byte TX_RETRY = 8;
+    private static final byte TX_RETRY_EAGER = 9;
+
+    // receiver state x event, and transmitter state x receiver state x event
+    private static final byte[] RECEIVER_TABLE = new byte[NUM_RECEIVER * NUM_EVENTS];
+    private static final byte[] TRANSMITTER_TABLE = new byte[Transmitter.values().length * NUM_RECEIVER * NUM_EVENTS];
+
+    static {
+	SimulatedEvent.SimEvtType[] all = SimulatedEvent.SimEvtType.values();
+	Receiver[] anyReceiver = Receiver.values();
+	Receiver[] idle = { Receiver.IDLE };
+	Receiver[] notIdle = { Receiver.BUSY, Receiver.GAP };
+
+	// Line is busy.  When the end of a transmission or jamming reaches me,
+	//	wait out the gap
+	receiver(Receiver.BUSY, LOCAL_ONLY, RX_GAP, SimulatedEvent.SimEvtType.JAMMING_DONE, SimulatedEvent.SimEvtType.TRANS_DONE);
+
+	// once MY gap time is over, the receiver is idle
+	receiver(Receiver.GAP, MINE, RX_IDLE, SimulatedEvent.SimEvtType.GAP_DONE);
+
+	// the line is idle and the start of a signal reaches me
+	receiver(Receiver.IDLE, LOCAL_ONLY, RX_BUSY, SimulatedEvent.SimEvtType.JAMMING_START,
+		 SimulatedEvent.SimEvtType.PREAMBLE_START, SimulatedEvent.SimEvtType.TRANS_START);
+
+	// my own transmission just ended, wait out the gap
+	receiver(Receiver.IDLE, 1 << OWN_BROADCAST, RX_GAP, SimulatedEvent.SimEvtType.TRANS_DONE);
+
+	// I am eager to send, and as soon as my receiver is idle I start my preamble
+	transmitter(Transmitter.EAGER, idle, ANYONE, TX_PREAMBLE, all);
+
+	// When MY preamble is done, send the packet if the line is still idle,
+	//	otherwise a collision occurred so jam
+	transmitter(Transmitter.PREAMBLE, idle, MINE, TX_SEND, SimulatedEvent.SimEvtType.PREAMBLE_DONE);
+	transmitter(Transmitter.PREAMBLE, notIdle, MINE, TX_JAM, SimulatedEvent.SimEvtType.PREAMBLE_DONE);
+
+	// when my jamming is done, back off
+	transmitter(Transmitter.JAMMING, anyReceiver, MINE, TX_BACKOFF, SimulatedEvent.SimEvtType.JAMMING_DONE);
+
+	// I am sending.  If my receiver has become busy, jam; otherwise when the
+	//	transmission is complete, prepare the next packet
+	transmitter(Transmitter.SENDING, new Receiver[] { Receiver.BUSY }, ANYONE, TX_COLLIDE, all);
+	transmitter(Transmitter.SENDING, new Receiver[] { Receiver.IDLE, Receiver.GAP }, MINE, TX_SENT,
+		    SimulatedEvent.SimEvtType.TRANS_DONE);
+
+	// Once MY packet is ready, start the preamble if the line is idle, else
+	//	become eager
+	transmitter(Transmitter.PREPARING, idle, MINE, TX_PREAMBLE, SimulatedEvent.SimEvtType.PACKET_READY);
+	transmitter(Transmitter.PREPARING, notIdle, MINE, TX_EAGER, SimulatedEvent.SimEvtType.PACKET_READY);
+
+	// Once MY backoff is over, give up on a packet that has been tried too
+	//	many times, otherwise try again as if it were just ready
+	transmitter(Transmitter.WAITING, idle, MINE, TX_RETRY, SimulatedEvent.SimEvtType.BACKOFF_DONE);
+	transmitter(Transmitter.WAITING, notIdle, MINE, TX_RETRY_EAGER, SimulatedEvent.SimEvtType.BACKOFF_DONE);
+    }
+
+    private static void receiver(Receiver from, int variants, byte move, SimulatedEvent.SimEvtType... types) {
+	for (SimulatedEvent.SimEvtType type : types) {
+	    for (int v = 0; v < VARIANTS; v++) {
+		if ((variants & (1 << v)) != 0) {
+		    RECEIVER_TABLE[from.ordinal() * NUM_EVENTS + type.ordinal() * VARIANTS + v] = move;
 		}
+	    }
 	}
+    }
 
+    private static void transmitter(Transmitter from, Receiver[] receivers, int variants, byte move,
+				    SimulatedEvent.SimEvtType... types) {
+	for (Receiver rx : receivers) {
+	    for (SimulatedEvent.SimEvtType type : types) {
+		for (int v = 0; v < VARIANTS; v++) {
+		    if ((variants & (1 << v)) != 0) {
+			TRANSMITTER_TABLE[(from.ordinal() * NUM_RECEIVER + rx.ordinal()) * NUM_EVENTS
+					  + type.ordinal() * VARIANTS + v] = move;
+		    }
+		}
+	    }
+	}
+    }
 
 
 	public enum Transmitter {
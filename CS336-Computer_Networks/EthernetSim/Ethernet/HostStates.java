@@ -0,0 +1,57 @@
+/*
+ * HostStates:
+ *      The part of a Host that changes as the simulation runs, kept as one
+ *      primitive array per field rather than in the Host objects, so the state
+ *      the transition tables read and write for neighbouring hosts sits side
+ *      by side in memory.  Each Host owns one slot.  A SimulatedTime lays its
+ *      hosts out by host id; a ReplicatedTime puts all of its replicas in one
+ *      block, replica after replica.
+ */
+
+package Ethernet;
+
+public class HostStates {
+
+    // Transmitter and Receiver ordinals
+    final byte[] tstate;
+    final byte[] rstate;
+
+    final int[] transAttempt;
+
+    // when the packet going out became ready, and for on/off arrivals the time
+    // the current burst runs out
+    final double[] packRdyTime;
+    final double[] burstEnds;
+
+    // seq of the TRANS_DONE a collision has to cancel
+    final long[] expectedTransDoneSeq;
+
+    // measurements, cleared by StartMeasuring
+    final int[] packetsSent;
+    final int[] packetsDropped;
+    final double[] totalCollisionSlots;
+    final int[] numCollisionPeriods;
+    final double[] totalTransDelay;
+
+    // every collision since the host was made, measuring or not
+    final long[] collisions;
+
+    public HostStates(int slots) {
+	tstate = new byte[slots];
+	rstate = new byte[slots];
+	transAttempt = new int[slots];
+	packRdyTime = new double[slots];
+	burstEnds = new double[slots];
+	expectedTransDoneSeq = new long[slots];
+	packetsSent = new int[slots];
+	packetsDropped = new int[slots];
+	totalCollisionSlots = new double[slots];
+	numCollisionPeriods = new int[slots];
+	totalTransDelay = new double[slots];
+	collisions = new long[slots];
+    }
+
+    public int getSlots() {
+	return tstate.length;
+    }
+}
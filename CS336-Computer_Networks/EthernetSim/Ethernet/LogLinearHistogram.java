@@ -0,0 +1,249 @@
+/*
+ * LogLinearHistogram:
+ *      Counts of a non-negative quantity (transmission delays in bit times,
+ *      backoff slots) in buckets that are exact below 64 and then split every
+ *      power of two into 32 linear steps, so any recorded value is known to
+ *      within about 3% however large it gets.  Alongside the counts it keeps
+ *      Welford's running mean and variance and the exact extremes.  Recording
+ *      never allocates, and histograms from different hosts or trials merge
+ *      into one without losing anything.
+ */
+
+package Ethernet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class LogLinearHistogram {
+
+    // values below 2^SUB_BITS get a bucket each; every octave above gets 2^(SUB_BITS - 1)
+    private static final int SUB_BITS = 6;
+    private static final int EXACT = 1 << SUB_BITS;
+    private static final int STEPS = EXACT >> 1;
+
+    // octaves up to 2^MAX_EXP, about five days of 10 Mbit bit times; anything larger lands in the last bucket
+    private static final int MAX_EXP = 42;
+
+    public static final int BUCKETS = EXACT + (MAX_EXP - SUB_BITS + 1) * STEPS;
+
+    private long[] counts = new long[BUCKETS];
+
+    private long count = 0;
+    private double mean = 0;
+    private double sumSquares = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public LogLinearHistogram() {
+    }
+
+    public void record(double value) {
+	counts[bucketOf(value)]++;
+
+	count++;
+
+	double delta = value - mean;
+
+	mean += delta / count;
+	sumSquares += delta * (value - mean);
+
+	min = Math.min(min, value);
+	max = Math.max(max, value);
+    }
+
+    public void reset() {
+	Arrays.fill(counts, 0);
+
+	count = 0;
+	mean = 0;
+	sumSquares = 0;
+	min = Double.POSITIVE_INFINITY;
+	max = Double.NEGATIVE_INFINITY;
+    }
+
+    // adds other's samples to these (Chan et al. for the moments)
+    public void merge(LogLinearHistogram other) {
+	if (other.count == 0) {
+	    return;
+	}
+
+	for (int i = 0; i < BUCKETS; i++) {
+	    counts[i] += other.counts[i];
+	}
+
+	long total = count + other.count;
+	double delta = other.mean - mean;
+
+	sumSquares += other.sumSquares + delta * delta * ((double)count * other.count / total);
+	mean += delta * other.count / total;
+	count = total;
+
+	min = Math.min(min, other.min);
+	max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+	return count;
+    }
+
+    public double getMean() {
+	return (count > 0) ? mean : Double.NaN;
+    }
+
+    // sample variance
+    public double getVariance() {
+	return (count > 1) ? sumSquares / (count - 1) : 0;
+    }
+
+    public double getStdDev() {
+	return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+	return (count > 0) ? min : Double.NaN;
+    }
+
+    public double getMax() {
+	return (count > 0) ? max : Double.NaN;
+    }
+
+    // the value percent of the samples are at or below, to within a bucket
+    public double getPercentile(double percent) {
+	if (count == 0) {
+	    return Double.NaN;
+	}
+
+	long rank = Math.max(1, (long)Math.ceil(percent / 100.0 * count));
+	long seen = 0;
+
+	for (int i = 0; i < BUCKETS; i++) {
+	    seen += counts[i];
+
+	    if (seen >= rank) {
+		// middle of the bucket, but never outside what was actually recorded
+		double value = lowerBound(i) + (bucketWidth(i) - 1) / 2.0;
+
+		return Math.max(min, Math.min(max, value));
+	    }
+	}
+
+	return max;
+    }
+
+    private static int bucketOf(double value) {
+	long v = (value > 0) ? Math.round(value) : 0;
+
+	if (v < EXACT) {
+	    return (int)v;
+	}
+
+	int exp = 63 - Long.numberOfLeadingZeros(v);
+
+	if (exp > MAX_EXP) {
+	    return BUCKETS - 1;
+	}
+
+	int step = (int)(v >>> (exp - SUB_BITS + 1)) - STEPS;
+
+	return EXACT + (exp - SUB_BITS) * STEPS + step;
+    }
+
+    private static long lowerBound(int bucket) {
+	if (bucket < EXACT) {
+	    return bucket;
+	}
+
+	int k = bucket - EXACT;
+	int exp = k / STEPS + SUB_BITS;
+
+	return (long)(k % STEPS + STEPS) << (exp - SUB_BITS + 1);
+    }
+
+    private static long bucketWidth(int bucket) {
+	if (bucket < EXACT) {
+	    return 1;
+	}
+
+	return 1L << ((bucket - EXACT) / STEPS + 1);
+    }
+
+    // moments, then only the buckets that have anything in them
+    public void writeTo(DataOutput out) throws IOException {
+	out.writeLong(count);
+	out.writeDouble(mean);
+	out.writeDouble(sumSquares);
+	out.writeDouble(min);
+	out.writeDouble(max);
+
+	int used = 0;
+
+	for (int i = 0; i < BUCKETS; i++) {
+	    if (counts[i] != 0) {
+		used++;
+	    }
+	}
+
+	out.writeShort(used);
+
+	for (int i = 0; i < BUCKETS; i++) {
+	    if (counts[i] != 0) {
+		out.writeShort(i);
+		out.writeLong(counts[i]);
+	    }
+	}
+    }
+
+    public static LogLinearHistogram readFrom(DataInput in) throws IOException {
+	LogLinearHistogram h = new LogLinearHistogram();
+
+	h.count = in.readLong();
+	h.mean = in.readDouble();
+	h.sumSquares = in.readDouble();
+	h.min = in.readDouble();
+	h.max = in.readDouble();
+
+	int used = in.readUnsignedShort();
+
+	for (int i = 0; i < used; i++) {
+	    int bucket = in.readUnsignedShort();
+
+	    if (bucket >= BUCKETS) {
+		throw new IOException("Histogram bucket " + bucket + " out of range");
+	    }
+
+	    h.counts[bucket] = in.readLong();
+	}
+
+	return h;
+    }
+
+    public byte[] toBytes() {
+	try {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+
+	    writeTo(out);
+	    out.flush();
+
+	    return bytes.toByteArray();
+	} catch (IOException e) {
+	    // cannot happen writing to memory
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    public static LogLinearHistogram fromBytes(byte[] data) throws IOException {
+	return readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public String toString() {
+	return count + " samples, mean " + getMean() + " sd " + getStdDev() + ", p50 " + getPercentile(50)
+	    + " p90 " + getPercentile(90) + " p99 " + getPercentile(99) + " max " + getMax();
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * ParallelTime:
+ *      Runs the network of a SimulatedTime with one thread per repeater
+ *      segment.  Each segment gets a SimulatedTime of its own holding just the
+ *      events of its hosts and the arrivals on it; segments only affect each
+ *      other through broadcasts, and those take at least the repeater-to-
+ *      repeater delay to get anywhere.  That delay is the lookahead for a
+ *      conservative, window-at-a-time schedule: between windows every segment
+ *      stops, the arrivals sent during the window are handed over, and each
+ *      segment is told how far it may go before anything still unsent could
+ *      reach it.  Since event ties are broken per host (see SimulatedTime),
+ *      every host sees exactly the same events in the same order as it would
+ *      on one thread, so the results are identical to the sequential engine's.
+ */
+
+package Ethernet;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelTime {
+
+    private SimulatedTime whole;
+    private Propagator propagator;
+
+    private SimulatedTime[] segments;
+
+    // shortest time for anything happening on segment a to have an effect on
+    // segment b, directly or relayed through other segments
+    private double[][] reach;
+
+    // earliest time each segment could still have anything to do
+    private double[] earliest;
+
+    // filled in between windows: each segment's next event, and the time it
+    // may run up to (but not including) in the coming window
+    private double[] next;
+    private double[] bound;
+
+    private double until;
+    private boolean finished;
+
+    // the first thing that went wrong in any segment, Errors included
+    private volatile Throwable failure;
+
+    private long windows = 0;
+
+    // CPU time used by the segment threads advanceTo() starts, see getWorkerCpuNanos
+    private final AtomicLong workerCpuNanos = new AtomicLong();
+
+    // Splits whole into its segments and deals out its pending events; whole
+    // is left empty until join().
+    public ParallelTime(SimulatedTime whole) {
+	this.whole = whole;
+	propagator = whole.getPropagator();
+
+	int n = propagator.getNumSegments();
+
+	segments = new SimulatedTime[n];
+	next = new double[n];
+	bound = new double[n];
+	earliest = new double[n];
+
+	reach = new double[n][n];
+
+	for (int a = 0; a < n; a++) {
+	    for (int b = 0; b < n; b++) {
+		reach[a][b] = propagator.getDelay(a, b);
+	    }
+	}
+
+	for (int via = 0; via < n; via++) {
+	    for (int a = 0; a < n; a++) {
+		for (int b = 0; b < n; b++) {
+		    reach[a][b] = Math.min(reach[a][b], reach[a][via] + reach[via][b]);
+		}
+	    }
+	}
+
+	for (int s = 0; s < n; s++) {
+	    segments[s] = new SimulatedTime(whole, s);
+
+	    for (Host h : propagator.getSegmentHosts(s)) {
+		h.stime = segments[s];
+	    }
+	}
+
+	SimulatedEvent e;
+
+	while ((e = whole.takeNext()) != null) {
+	    segments[ownerOf(e)].put(e);
+	}
+    }
+
+    public int getNumSegments() {
+	return segments.length;
+    }
+
+    // CPU time the segment threads have used so far, not counting segment 0,
+    // which runs on the thread calling advanceTo(); -1 if the JVM cannot say
+    public long getWorkerCpuNanos() {
+	return ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported() ? workerCpuNanos.get() : -1;
+    }
+
+    // windows run so far, a measure of how much the lookahead is costing
+    public long getWindows() {
+	return windows;
+    }
+
+    // The segments' counters summed, for watching from another thread; see
+    // SimulatedTime.getEventsRun and GetTimelineSize.
+    public long getEventsRun() {
+	long events = whole.eventsRun;
+
+	for (SimulatedTime segment : segments) {
+	    events += segment.eventsRun;
+	}
+
+	return events;
+    }
+
+    public int GetTimelineSize() {
+	int size = 0;
+
+	for (SimulatedTime segment : segments) {
+	    size += segment.GetTimelineSize();
+	}
+
+	return size;
+    }
+
+    // how far every segment has got
+    public double getCurrentTime() {
+	double now = Double.POSITIVE_INFINITY;
+
+	for (SimulatedTime segment : segments) {
+	    now = Math.min(now, segment.getCurrentTime());
+	}
+
+	return now;
+    }
+
+    // Runs every event before until, the same as SimulatedTime.advanceTo.
+    public void advanceTo(double until) {
+	this.until = until;
+	finished = false;
+
+	final CyclicBarrier barrier = new CyclicBarrier(segments.length, new Runnable() {
+		public void run() {
+		    plan();
+		}
+	    });
+
+	Thread[] workers = new Thread[segments.length];
+
+	for (int s = 1; s < segments.length; s++) {
+	    final int segment = s;
+
+	    workers[s] = new Thread(new Runnable() {
+		    public void run() {
+			try {
+			    work(segment, barrier);
+			} finally {
+			    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+			    if (threads.isCurrentThreadCpuTimeSupported()) {
+				workerCpuNanos.addAndGet(threads.getCurrentThreadCpuTime());
+			    }
+			}
+		    }
+		}, "segment-" + s);
+
+	    workers[s].start();
+	}
+
+	work(0, barrier);
+
+	for (int s = 1; s < segments.length; s++) {
+	    try {
+		workers[s].join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		failure = new IllegalStateException("Interrupted waiting for segment " + s);
+	    }
+	}
+
+	if (failure != null) {
+	    Throwable f = failure;
+	    failure = null;
+
+	    if (f instanceof RuntimeException) {
+		throw (RuntimeException) f;
+	    } else if (f instanceof Error) {
+		throw (Error) f;
+	    } else {
+		throw new IllegalStateException("Segment failed", f);
+	    }
+	}
+    }
+
+    // Hands the hosts, their counters and whatever is still pending back to
+    // the SimulatedTime this was split from, which carries on from there.
+    public void join() {
+	for (int s = 0; s < segments.length; s++) {
+	    SimulatedTime segment = segments[s];
+
+	    for (Host h : propagator.getSegmentHosts(s)) {
+		h.stime = whole;
+		whole.rejoin(segment, h.hostId);
+	    }
+
+	    for (SimulatedEvent e : segment.outbox) {
+		whole.put(e);
+	    }
+
+	    segment.outbox.clear();
+
+	    SimulatedEvent e;
+
+	    while ((e = segment.takeNext()) != null) {
+		whole.put(e);
+	    }
+
+	    whole.eventsRun += segment.eventsRun;
+	    segment.eventsRun = 0;
+	}
+    }
+
+    private void work(int s, CyclicBarrier barrier) {
+	try {
+	    while (true) {
+		barrier.await();
+
+		if (finished) {
+		    return;
+		}
+
+		try {
+		    segments[s].advanceTo(bound[s]);
+		} catch (Throwable e) {
+		    // keep turning up at the barrier so the others are not left
+		    // waiting; plan() sees the failure and finishes the run
+		    fail(e);
+		}
+	    }
+	} catch (InterruptedException e) {
+	    fail(new IllegalStateException("Segment " + s + " interrupted"));
+	} catch (BrokenBarrierException e) {
+	    fail(new IllegalStateException("Segment " + s + " lost its barrier"));
+	} catch (Throwable e) {
+	    // plan() or the barrier itself failed; releases whoever is waiting
+	    fail(e);
+	    barrier.reset();
+	}
+    }
+
+    // keeps the first failure, which the others usually follow from
+    private synchronized void fail(Throwable e) {
+	if (failure == null) {
+	    failure = e;
+	}
+    }
+
+    // Runs between windows on whichever thread reached the barrier last.
+    private void plan() {
+	windows++;
+
+	for (SimulatedTime segment : segments) {
+	    for (SimulatedEvent e : segment.outbox) {
+		segments[e.segment].put(e);
+	    }
+
+	    segment.outbox.clear();
+	}
+
+	double first = Double.POSITIVE_INFINITY;
+
+	for (int s = 0; s < segments.length; s++) {
+	    next[s] = segments[s].nextEventTime();
+	    first = Math.min(first, next[s]);
+	}
+
+	if (failure != null || first >= until) {
+	    finished = true;
+	    return;
+	}
+
+	// A segment with nothing queued can still be woken by an arrival, so
+	// what it might do is bounded by what the others (the one being bounded
+	// included) could send it; nothing on a can then reach b any sooner than
+	// that plus the delay from a to b.
+	for (int a = 0; a < segments.length; a++) {
+	    earliest[a] = next[a];
+
+	    for (int c = 0; c < segments.length; c++) {
+		if (c != a) {
+		    earliest[a] = Math.min(earliest[a], next[c] + reach[c][a]);
+		}
+	    }
+	}
+
+	for (int b = 0; b < segments.length; b++) {
+	    double safe = until;
+
+	    for (int a = 0; a < segments.length; a++) {
+		if (a != b) {
+		    safe = Math.min(safe, earliest[a] + propagator.getDelay(a, b));
+		}
+	    }
+
+	    bound[b] = safe;
+	}
+    }
+
+    private int ownerOf(SimulatedEvent e) {
+	return (e.segment >= 0) ? e.segment : propagator.getSegmentOf(e.RepeaterIndexOfHost);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Propagator:
+ *      Carries a broadcast out to the other hosts.  Hosts that share a repeater
+ *      all see a signal at the same moment, so instead of every host scheduling
+ *      its own copy of every broadcast, the hosts are grouped into one segment
+ *      per repeater and a broadcast turns into one arrival event per segment,
+ *      timed from a segment-to-segment delay table taken out of the Topology.
+ *      When an arrival comes up it is handed to every host on that segment
+ *      except the one that sent it.
+ */
+
+package Ethernet;
+
+import java.util.ArrayList;
+
+public class Propagator {
+
+    private SimulatedTime stime;
+
+    // hosts on each segment, and the repeater index the segment sits on
+    private Host[][] segmentHosts;
+    private int[] segmentRepeater;
+
+    // segmentOfRepeater[repeaterIndex] is that repeater's segment
+    private int[] segmentOfRepeater;
+
+    // bit times for a signal leaving segment a to reach a host on segment b
+    private double[][] delay;
+
+    public Propagator(SimulatedTime parentTime, ArrayList<Host> hostlist) {
+	stime = parentTime;
+
+	int maxRepeater = 0;
+
+	for (Host h : hostlist) {
+	    maxRepeater = Math.max(maxRepeater, h.repeaterIndex);
+	}
+
+	int[] counts = new int[maxRepeater + 1];
+
+	for (Host h : hostlist) {
+	    counts[h.repeaterIndex]++;
+	}
+
+	segmentOfRepeater = new int[maxRepeater + 1];
+	int numSegments = 0;
+
+	for (int r = 0; r <= maxRepeater; r++) {
+	    segmentOfRepeater[r] = (counts[r] > 0) ? numSegments++ : -1;
+	}
+
+	segmentHosts = new Host[numSegments][];
+	segmentRepeater = new int[numSegments];
+
+	for (int r = 0; r <= maxRepeater; r++) {
+	    if (counts[r] > 0) {
+		int s = segmentOfRepeater[r];
+		segmentHosts[s] = new Host[counts[r]];
+		segmentRepeater[s] = r;
+		counts[r] = 0;
+	    }
+	}
+
+	for (Host h : hostlist) {
+	    int s = segmentOfRepeater[h.repeaterIndex];
+	    segmentHosts[s][counts[h.repeaterIndex]++] = h;
+	}
+
+	Topology topology = parentTime.getTopology();
+	delay = new double[numSegments][numSegments];
+
+	for (int a = 0; a < numSegments; a++) {
+	    for (int b = 0; b < numSegments; b++) {
+		delay[a][b] = topology.getDelay(segmentRepeater[a], segmentRepeater[b]);
+	    }
+	}
+    }
+
+    public int getNumSegments() {
+	return segmentHosts.length;
+    }
+
+    public Host[] getSegmentHosts(int segment) {
+	return segmentHosts[segment];
+    }
+
+    public int getSegmentOf(int repeaterIndex) {
+	return segmentOfRepeater[repeaterIndex];
+    }
+
+    public double getDelay(int from, int to) {
+	return delay[from][to];
+    }
+
+    // schedules one arrival of e on every segment that has someone to hear it
+    public void broadcast(SimulatedEvent e) {
+	int from = segmentOfRepeater[e.RepeaterIndexOfHost];
+
+	for (int s = 0; s < segmentHosts.length; s++) {
+	    if (s == from && segmentHosts[s].length == 1) {
+		continue;
+	    }
+
+	    stime.scheduleArrival(e.getEventType(), delay[from][s], e.hostCreated,
+				  e.RepeaterIndexOfHost, s);
+	}
+    }
+
+    // hands an arrival to everyone on its segment but the sender
+    public void deliver(SimulatedEvent arrival) {
+	Host[] hosts = segmentHosts[arrival.segment];
+
+	for (int i = 0; i < hosts.length; i++) {
+	    if (hosts[i].hostId != arrival.hostCreated) {
+		hosts[i].reactToArrival(arrival);
+	    }
+	}
+    }
+}
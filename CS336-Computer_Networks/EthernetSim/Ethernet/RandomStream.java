@@ -0,0 +1,132 @@
+/*
+ * RandomStream:
+ *      A SplitMix64 generator, the same algorithm java.util.SplittableRandom
+ *      uses, with its state out in the open so a run can be saved and replayed.
+ *      Streams are derived rather than seeded from the clock: an experiment
+ *      seed derives one stream per trial and each trial stream derives one per
+ *      host, so every host draws from its own independent sequence and the
+ *      whole run is reproducible from the experiment seed alone.  A stream is
+ *      not thread safe; each one belongs to a single host.
+ */
+
+package Ethernet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class RandomStream {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // current position, the step between positions, and the seed the stream started from
+    private long seed;
+    private long gamma;
+    private long origin;
+
+    public RandomStream(long seed) {
+	this(mix64(seed), mixGamma(seed + GOLDEN_GAMMA), seed);
+    }
+
+    public RandomStream(long seed, long gamma, long origin) {
+	this.seed = seed;
+	this.gamma = gamma | 1L;
+	this.origin = origin;
+    }
+
+    // experiment seed -> trial stream
+    public static RandomStream forTrial(long experimentSeed, int trial) {
+	return new RandomStream(experimentSeed).derive(trial);
+    }
+
+    // An independent child stream picked out by key.  It depends only on where
+    // this stream started and the key, never on how much has been drawn from it.
+    public RandomStream derive(long key) {
+	long childOrigin = mix64(origin ^ mix64(gamma + key * GOLDEN_GAMMA));
+	return new RandomStream(childOrigin);
+    }
+
+    public long nextLong() {
+	return mix64(nextSeed());
+    }
+
+    // uniform in [0, bound)
+    public int nextInt(int bound) {
+	if (bound <= 0) {
+	    throw new IllegalArgumentException("bound must be positive");
+	}
+
+	int r = mix32(nextSeed());
+	int m = bound - 1;
+
+	if ((bound & m) == 0) {
+	    return r & m;
+	}
+
+	// reject the top sliver that would bias the modulus
+	for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+	}
+
+	return r;
+    }
+
+    // uniform in [0, 1)
+    public double nextDouble() {
+	return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    // exponential with the given mean
+    public double nextExponential(double mean) {
+	return -mean * Math.log(1.0 - nextDouble());
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+	out.writeLong(seed);
+	out.writeLong(gamma);
+	out.writeLong(origin);
+    }
+
+    public static RandomStream readFrom(DataInput in) throws IOException {
+	long seed = in.readLong();
+	long gamma = in.readLong();
+	long origin = in.readLong();
+
+	return new RandomStream(seed, gamma, origin);
+    }
+
+    public long getSeed() {
+	return seed;
+    }
+
+    public long getGamma() {
+	return gamma;
+    }
+
+    public long getOrigin() {
+	return origin;
+    }
+
+    private long nextSeed() {
+	return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+	z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+	z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+	return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+	z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+	return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    // odd, and with enough bit transitions to step well
+    private static long mixGamma(long z) {
+	z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+	z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+	z = (z ^ (z >>> 33)) | 1L;
+	int n = Long.bitCount(z ^ (z >>> 1));
+	return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * ReplicatedTime:
+ *      Several independent replicas of one network, typically the trials of a
+ *      configuration, advanced together by one engine.  Each replica is a
+ *      SimulatedTime with its own timeline, clock and random streams, so it
+ *      runs exactly as it would on its own, but all of their hosts keep their
+ *      state in one HostStates block, replica after replica.  Replicas part
+ *      ways at their first random draw, so there is never one event to apply
+ *      to all of them at once; instead advanceTo() moves them in lockstep a
+ *      window at a time, one replica after another, which keeps each
+ *      replica's timeline and hosts hot in cache for a few thousand events.
+ */
+
+package Ethernet;
+
+public class ReplicatedTime {
+
+    // bit times each replica runs before the next one takes over
+    public static final double WINDOW = 100000.0;
+
+    private SimulatedTime[] replicas;
+    private HostStates hostStates;
+    private int hostsPerReplica;
+
+    // replicas that no longer advance, see retire()
+    private boolean[] retired;
+
+    // how far every replica still running has been advanced
+    private double now = 0;
+
+    // one replica per config; they may differ in seed and trial, not in the network
+    public ReplicatedTime(SimConfig[] configs) {
+	if (configs.length == 0) {
+	    throw new IllegalArgumentException("No replicas");
+	}
+
+	hostsPerReplica = topologyOf(configs[0]).getNumHosts();
+
+	for (SimConfig c : configs) {
+	    if (topologyOf(c).getNumHosts() != hostsPerReplica) {
+		throw new IllegalArgumentException("Replicas need the same hosts, not " + hostsPerReplica
+						   + " and " + topologyOf(c).getNumHosts());
+	    }
+	}
+
+	hostStates = new HostStates(configs.length * hostsPerReplica);
+	replicas = new SimulatedTime[configs.length];
+	retired = new boolean[configs.length];
+
+	for (int i = 0; i < configs.length; i++) {
+	    replicas[i] = new SimulatedTime(configs[i], hostStates, i * hostsPerReplica);
+	}
+    }
+
+    private static Topology topologyOf(SimConfig config) {
+	return (config.topology != null) ? config.topology : Topology.Standard(config);
+    }
+
+    public int getNumReplicas() {
+	return replicas.length;
+    }
+
+    public SimulatedTime getReplica(int i) {
+	return replicas[i];
+    }
+
+    public HostStates getHostStates() {
+	return hostStates;
+    }
+
+    // stops advancing a replica, leaving it where it is
+    public void retire(int i) {
+	retired[i] = true;
+    }
+
+    public boolean isRetired(int i) {
+	return retired[i];
+    }
+
+    // runs every event before until in each replica still going
+    public void advanceTo(double until) {
+	while (now < until) {
+	    double windowEnd = Math.min(until, now + WINDOW);
+
+	    for (int i = 0; i < replicas.length; i++) {
+		if (!retired[i]) {
+		    replicas[i].advanceTo(windowEnd);
+		}
+	    }
+
+	    now = windowEnd;
+	}
+    }
+
+    // events run by all the replicas so far; see SimulatedTime.getEventsRun
+    public long getEventsRun() {
+	long total = 0;
+
+	for (SimulatedTime replica : replicas) {
+	    total += replica.getEventsRun();
+	}
+
+	return total;
+    }
+
+    public int GetTimelineSize() {
+	int total = 0;
+
+	for (SimulatedTime replica : replicas) {
+	    total += replica.GetTimelineSize();
+	}
+
+	return total;
+    }
+
+    // the point every replica still going has reached
+    public double getCurrentTime() {
+	return now;
+    }
+}
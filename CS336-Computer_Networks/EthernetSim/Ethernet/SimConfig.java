@@ -0,0 +1,129 @@
+/*
+ * SimConfig:
+ *      Everything about one simulation run that used to live in statics on
+ *      Host, SimulatedTime and Initializer.  Each SimulatedTime owns its own
+ *      copy, so runs with different settings can go side by side on separate
+ *      threads.
+ */
+
+package Ethernet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class SimConfig {
+
+    // For our fairness test, put hosts 0-3 on repeater 0 and everyone else on repeater 10
+    public boolean fairnessMode = false;
+
+    // bounds on the time a host spends preparing its next packet, in bit times
+    public int minProcessTime = 1000;
+    public int maxProcessTime = 1250;
+
+    // hosts in the network, whether or not they transmit
+    public int numHosts = 24;
+
+    // where the hosts sit and how they generate packets; null for the
+    // standard layout of numHosts hosts, see Topology.Standard
+    public Topology topology = null;
+
+    // 15 seconds * 10^7 Mbits/second, which is 10 seconds + 5 seconds of stabilization
+    public double maxExperimentTime = 150000000;
+    // 5 seconds * 10^7 MBits/second to stabilize
+    public double minMeasurementTime = 50000000;
+
+    // Stop measuring once every reported metric's 95% confidence interval is
+    // within this fraction of its mean; 0 always runs to maxExperimentTime,
+    // which stays the hard cap either way.
+    public double targetPrecision = Double.parseDouble(System.getProperty("ethsim.precision", "0"));
+    // bit times per batch of the batch-means estimate, and how many batches
+    // have to be in before the precision is trusted
+    public double batchLength = 2000000;
+    public int minBatches = 10;
+
+    // run each repeater segment on a thread of its own, see ParallelTime
+    public boolean parallel = Boolean.getBoolean("ethsim.parallel");
+
+    // experiment seed and trial number; every random draw in the run derives from these
+    public long seed = Long.getLong("ethsim.seed", new RandomStream(System.nanoTime()).nextLong());
+    public int trial = 0;
+
+    // "calendar" or "heap", see SimulatedTime.newQueue
+    public String queueKind = System.getProperty("ethsim.queue", "calendar");
+
+    public SimConfig()
+    {
+    }
+
+    public SimConfig copy()
+    {
+	SimConfig c = new SimConfig();
+
+	c.fairnessMode = fairnessMode;
+	c.minProcessTime = minProcessTime;
+	c.maxProcessTime = maxProcessTime;
+	c.numHosts = numHosts;
+	c.topology = topology;
+	c.maxExperimentTime = maxExperimentTime;
+	c.minMeasurementTime = minMeasurementTime;
+	c.targetPrecision = targetPrecision;
+	c.batchLength = batchLength;
+	c.minBatches = minBatches;
+	c.parallel = parallel;
+	c.seed = seed;
+	c.trial = trial;
+	c.queueKind = queueKind;
+
+	return c;
+    }
+
+    public void writeTo(DataOutput out) throws IOException
+    {
+	out.writeBoolean(fairnessMode);
+	out.writeInt(minProcessTime);
+	out.writeInt(maxProcessTime);
+	out.writeInt(numHosts);
+	out.writeBoolean(topology != null);
+
+	if (topology != null) {
+	    topology.writeTo(out);
+	}
+
+	out.writeDouble(maxExperimentTime);
+	out.writeDouble(minMeasurementTime);
+	out.writeDouble(targetPrecision);
+	out.writeDouble(batchLength);
+	out.writeInt(minBatches);
+	out.writeBoolean(parallel);
+	out.writeLong(seed);
+	out.writeInt(trial);
+	out.writeUTF(queueKind);
+    }
+
+    public static SimConfig readFrom(DataInput in) throws IOException
+    {
+	SimConfig c = new SimConfig();
+
+	c.fairnessMode = in.readBoolean();
+	c.minProcessTime = in.readInt();
+	c.maxProcessTime = in.readInt();
+	c.numHosts = in.readInt();
+
+	if (in.readBoolean()) {
+	    c.topology = Topology.readFrom(in);
+	}
+
+	c.maxExperimentTime = in.readDouble();
+	c.minMeasurementTime = in.readDouble();
+	c.targetPrecision = in.readDouble();
+	c.batchLength = in.readDouble();
+	c.minBatches = in.readInt();
+	c.parallel = in.readBoolean();
+	c.seed = in.readLong();
+	c.trial = in.readInt();
+	c.queueKind = in.readUTF();
+
+	return c;
+    }
+}
@@ -6,11 +6,11 @@
 
 package Ethernet;
 
-import java.util.UUID;
-
 public class SimulatedEvent implements Comparable
 {
-    public UUID ID;
+    // handed out by SimulatedTime, counting each host's events separately with
+    // the host id in the low bits; breaks TimeStart ties, FIFO within a host
+    public long seq;
     public SimEvtType evtType;
 
     
@@ -21,12 +21,31 @@ public class SimulatedEvent implements Comparable
     public int RepeaterIndexOfHost;
     public boolean justMyself;
 
-    public SimulatedEvent(UUID inIdent, SimEvtType inType, double inStart,
+    // for a broadcast arriving at a repeater, the Propagator segment it arrives on; -1 otherwise
+    public int segment = -1;
+
+    // chains events within a CalendarEventQueue bucket, or SimulatedTime's free list
+    SimulatedEvent next;
+
+    // set while the event sits in a timeline, and once it has been cancelled there
+    boolean queued;
+    boolean cancelled;
+
+    // pooled events start out blank and get filled in by set()
+    SimulatedEvent()
+    {
+    }
+
+    public SimulatedEvent(SimEvtType inType, double inStart,
 			  double inDur, int host, int repeaterInd, 
 			  boolean justMyself)
     {
-	
-	ID = inIdent;
+	set(inType, inStart, inDur, host, repeaterInd, justMyself);
+    }
+
+    void set(SimEvtType inType, double inStart, double inDur, int host,
+	     int repeaterInd, boolean justMyself)
+    {
 	evtType = inType;
 	
 	TimeStart = inStart;
@@ -34,6 +53,7 @@ public class SimulatedEvent implements Comparable
 	hostCreated = host;
 	RepeaterIndexOfHost = repeaterInd;
 	this.justMyself = justMyself;
+	segment = -1;
     }
 
 
@@ -52,6 +72,14 @@ public class SimulatedEvent implements Comparable
 		{
 		    return -1;
 		}
+	    else if(this.seq > other.seq)
+		{
+		    return 1;
+		}
+	    else if(this.seq < other.seq)
+		{
+		    return -1;
+		}
 	    else
 		{
 		    return 0;
@@ -67,14 +95,28 @@ public class SimulatedEvent implements Comparable
 	return evtType;
     }
 
+    // Whether an event goes into experiment_event: broadcasts, plus the
+    // private events that mark a host's backoff and packet boundaries.  The
+    // arrivals a broadcast fans out into are private to the sender too, so
+    // this leaves them out; live logging and trace imports both go by it.
+    public static boolean isLogged(SimEvtType type, boolean justMyself)
+    {
+	return !justMyself || type == SimEvtType.BACKOFF_DONE || type == SimEvtType.PACKET_READY
+	    || type == SimEvtType.PACKET_ABORTED;
+    }
+
     public boolean equals(Object o){
 	if (o instanceof SimulatedEvent) {
 	    SimulatedEvent other = (SimulatedEvent)o;
-	    return this.ID.equals(other.ID) && this.getEventType() == other.getEventType();
+	    return this.seq == other.seq && this.getEventType() == other.getEventType();
 	} else {
 	    return false;
 	}
     }
+
+    public int hashCode(){
+	return (int)(seq ^ (seq >>> 32));
+    }
 	    
 
     // this set of types corresponds to the node state diagram
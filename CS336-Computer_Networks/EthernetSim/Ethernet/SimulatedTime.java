@@ -5,24 +5,156 @@
 
 package Ethernet;
 
-import java.util.PriorityQueue;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
 public class SimulatedTime {
 
+    // compact once at least this many cancelled events make up half the timeline
+    public static final int COMPACT_MIN_DEAD = 64;
+
+    // most events dumpTimeline holds at once; each pass over the timeline emits this many
+    public static final int DUMP_WINDOW = 4096;
+
+    // an event's seq is the count of events its host has scheduled so far,
+    // shifted over this many bits to make room for the host id
+    public static final int HOST_BITS = 16;
+    public static final int MAX_HOSTS = 1 << HOST_BITS;
+
     private double currentTime = 0;
 
-	private PriorityQueue<SimulatedEvent> timeline;
+    // cancelled events still sitting in the timeline
+    private int deadCount = 0;
+
+    // events run so far; a plain counter that SimMetrics reads from its own thread
+    long eventsRun = 0;
+
+    // events scheduled so far by each host, indexed by host id
+    private long[] issued = new long[0];
+
+    // spent events waiting to be handed out again, chained through next
+    private SimulatedEvent freeList = null;
+
+	private EventQueue timeline;
 	private ArrayList<Host> hostlist;
 
+	// the hosts' changing state, host i in slot hostBase + i; the block is
+	// shared with the other replicas of a ReplicatedTime
+	private HostStates hostStates;
+	private int hostBase = 0;
+
+	// built from hostlist the first time something is broadcast
+	private Propagator propagator = null;
+
+    // only valid until the next elapse(), after which it goes back to the pool
     public SimulatedEvent CurrentEvent;
 
+	private SimConfig config;
+
+	// config's topology, or the standard one it stands for
+	private Topology topology;
+
+	// the trial's stream; hosts and the run derive theirs from it
+	private RandomStream trialStream;
+
+	// When this is one segment of a ParallelTime, the segment it runs;
+	// arrivals for the other segments wait in outbox for the next exchange.
+	// -1 when it runs the whole network.
+	int localSegment = -1;
+	ArrayList<SimulatedEvent> outbox = null;
+
 	public SimulatedTime () {
-	    timeline = new PriorityQueue<SimulatedEvent>();
+	    this(new SimConfig());
+	}
+
+	public SimulatedTime (SimConfig config) {
+	    this(config, newQueue(config.queueKind));
+	}
+
+	public SimulatedTime (EventQueue queue) {
+	    this(new SimConfig(), queue);
+	}
+
+	public SimulatedTime (SimConfig config, EventQueue queue) {
+	    this.config = config;
+	    topology = (config.topology != null) ? config.topology : Topology.Standard(config);
+	    trialStream = RandomStream.forTrial(config.seed, config.trial);
+	    timeline = queue;
 	    hostlist = new ArrayList<Host>();
+	    hostStates = new HostStates(topology.getNumHosts());
 	}
 
+	// one replica of a ReplicatedTime, its hosts in states from slot base on
+	SimulatedTime (SimConfig config, HostStates states, int base) {
+	    this(config, newQueue(config.queueKind), states, base);
+	}
+
+	private SimulatedTime (SimConfig config, EventQueue queue, HostStates states, int base) {
+	    this.config = config;
+	    topology = (config.topology != null) ? config.topology : Topology.Standard(config);
+	    trialStream = RandomStream.forTrial(config.seed, config.trial);
+	    timeline = queue;
+	    hostlist = new ArrayList<Host>();
+	    hostStates = states;
+	    hostBase = base;
+	}
+
+	// One segment of a ParallelTime split off whole: same hosts, clock and
+	// counters, but a timeline of its own.
+	SimulatedTime (SimulatedTime whole, int segment) {
+	    this(whole.config, newQueue(whole.config.queueKind), whole.hostStates, whole.hostBase);
+	    topology = whole.topology;
+	    trialStream = whole.trialStream;
+	    hostlist = whole.hostlist;
+	    currentTime = whole.currentTime;
+	    issued = whole.issued.clone();
+	    localSegment = segment;
+	    outbox = new ArrayList<SimulatedEvent>();
+	    propagator = new Propagator(this, hostlist);
+	}
+
+    public SimConfig getConfig() {
+	return config;
+    }
+
+    public Topology getTopology() {
+	return topology;
+    }
+
+    public RandomStream getRandomStream() {
+	return trialStream;
+    }
+
+    public HostStates getHostStates() {
+	return hostStates;
+    }
+
+    // slot of host 0 in getHostStates()
+    public int getHostBase() {
+	return hostBase;
+    }
+
+    public static EventQueue newQueue(String kind)
+    {
+	if (kind.equalsIgnoreCase("heap")) {
+	    return new HeapEventQueue();
+	} else if (kind.equalsIgnoreCase("calendar")) {
+	    return new CalendarEventQueue();
+	} else {
+	    throw new IllegalArgumentException("Unknown event queue: " + kind);
+	}
+    }
+
+    public EventQueue getTimeline() {
+	return timeline;
+    }
+
     public double getCurrentTime() {
 	return currentTime;
     }
@@ -30,22 +162,56 @@ public class SimulatedTime {
     public void addHost(Host someHost)
     {
 	hostlist.add(someHost);
+	propagator = null;
+    }
+
+    public ArrayList<Host> getHosts()
+    {
+	return hostlist;
+    }
+
+    public Propagator getPropagator()
+    {
+	if (propagator == null) {
+	    propagator = new Propagator(this, hostlist);
+	}
+
+	return propagator;
     }
 
 
     public boolean elapse(){
+	if (CurrentEvent != null) {
+	    release(CurrentEvent);
+	}
+
 	CurrentEvent = timeline.poll();
+
+	// skip over anything that was cancelled while it waited
+	while (CurrentEvent != null && CurrentEvent.cancelled) {
+	    CurrentEvent.queued = false;
+	    deadCount--;
+	    release(CurrentEvent);
+	    CurrentEvent = timeline.poll();
+	}
 	
 	if (CurrentEvent == null){
 		return false;
 	} else {
+		CurrentEvent.queued = false;
 	        currentTime = CurrentEvent.TimeStart;
+		eventsRun++;
 
-		if(!CurrentEvent.justMyself)
+		if(CurrentEvent.segment >= 0)
+		    {
+			// a broadcast reaching one repeater's hosts
+			getPropagator().deliver(CurrentEvent);
+		    }
+		else if(!CurrentEvent.justMyself)
 		    {
-			for (Host h : hostlist){
-			    h.reactToEvent(CurrentEvent);
-			}
+			// the sender sees its own broadcast now, everyone else when it arrives
+			hostlist.get(CurrentEvent.hostCreated).reactToEvent(CurrentEvent);
+			getPropagator().broadcast(CurrentEvent);
 		    }
 		else
 		    {
@@ -57,30 +223,398 @@ public class SimulatedTime {
 	}
     }
 
+    // time of the next live event, or infinity when there is none
+    public double nextEventTime(){
+	SimulatedEvent head = timeline.peek();
+
+	while (head != null && head.cancelled) {
+	    timeline.poll();
+	    deadCount--;
+	    release(head);
+	    head = timeline.peek();
+	}
+
+	return (head == null) ? Double.POSITIVE_INFINITY : head.TimeStart;
+    }
+
+    // runs every event that comes before until, leaving the rest queued
+    public void advanceTo(double until){
+	while (nextEventTime() < until) {
+	    elapse();
+	}
+    }
+
+    public long getEventsRun()
+    {
+	return eventsRun;
+    }
+
     public int GetTimelineSize()
     {
-	return timeline.size();
+	return timeline.size() - deadCount;
     }
 
+    // the pending events, one line each in the order they will run; see dumpTimeline
     public String ExtractTimelineEvents()
     {
-	String retStr = "";
-	Iterator<SimulatedEvent> allEvtsLeft = timeline.iterator();
+	StringWriter out = new StringWriter();
+
+	try {
+	    dumpTimeline(out);
+	} catch (IOException e) {
+	    // a StringWriter never throws
+	}
+
+	return out.toString();
+    }
+
+    // Writes the pending events in the order they will run, one tab separated
+    // line each: time start, duration, type, host, repeater, self, segment.
+    // The timeline is never copied or sorted whole; see nextWindow.
+    public void dumpTimeline(Writer out) throws IOException
+    {
+	String eol = System.getProperty("line.separator");
+	SimulatedEvent[] window = newWindow();
+	SimulatedEvent last = null;
+	int n;
+
+	do {
+	    n = nextWindow(window, last);
 
-	while(allEvtsLeft.hasNext())
-	    {
-		retStr += allEvtsLeft.next() + System.getProperty("line.separator");
+	    for (int i = 0; i < n; i++) {
+		SimulatedEvent e = window[i];
+
+		out.write(Double.toString(e.TimeStart));
+		out.write('\t');
+		out.write(Double.toString(e.TimeDuration));
+		out.write('\t');
+		out.write(e.evtType.name());
+		out.write('\t');
+		out.write(Integer.toString(e.hostCreated));
+		out.write('\t');
+		out.write(Integer.toString(e.RepeaterIndexOfHost));
+		out.write('\t');
+		out.write(e.justMyself ? "self" : "all");
+		out.write('\t');
+		out.write(Integer.toString(e.segment));
+		out.write(eol);
+	    }
+
+	    if (n > 0) {
+		last = window[n - 1];
 	    }
+	} while (n == window.length);
 
-	return retStr;
+	out.flush();
     }
 
-	public boolean schedule(SimulatedEvent e){
-		return timeline.add(e);
+    // the same, as TraceWriter records
+    public void dumpTimeline(TraceWriter out) throws IOException
+    {
+	SimulatedEvent[] window = newWindow();
+	SimulatedEvent last = null;
+	int n;
+
+	do {
+	    n = nextWindow(window, last);
+
+	    for (int i = 0; i < n; i++) {
+		out.write(window[i]);
+	    }
+
+	    if (n > 0) {
+		last = window[n - 1];
+	    }
+	} while (n == window.length);
+    }
+
+    private SimulatedEvent[] newWindow()
+    {
+	return new SimulatedEvent[Math.max(1, Math.min(DUMP_WINDOW, GetTimelineSize()))];
+    }
+
+    // Fills window with the earliest live events that come after after (all of
+    // them when after is null), in order, and returns how many it found.  One
+    // pass over the queue keeps the window as a max-heap on compareTo, so memory
+    // stays at the window and a dump of n events costs n / window.length passes.
+    private int nextWindow(SimulatedEvent[] window, SimulatedEvent after)
+    {
+	int n = 0;
+	Iterator<SimulatedEvent> it = timeline.iterator();
+
+	while (it.hasNext()) {
+	    SimulatedEvent e = it.next();
+
+	    if (e.cancelled || (after != null && e.compareTo(after) <= 0)) {
+		continue;
+	    }
+
+	    if (n < window.length) {
+		// sift up
+		int i = n++;
+		while (i > 0) {
+		    int parent = (i - 1) >> 1;
+		    if (window[parent].compareTo(e) >= 0) {
+			break;
+		    }
+		    window[i] = window[parent];
+		    i = parent;
+		}
+		window[i] = e;
+	    } else if (e.compareTo(window[0]) < 0) {
+		siftDown(window, e, n);
+	    }
+	}
+
+	// heapsort what is left so the window comes out earliest first
+	for (int end = n - 1; end > 0; end--) {
+	    SimulatedEvent top = window[0];
+	    siftDown(window, window[end], end);
+	    window[end] = top;
+	}
+
+	return n;
+    }
+
+    // puts e at the root of the max-heap window[0..n) and sinks it into place
+    private static void siftDown(SimulatedEvent[] window, SimulatedEvent e, int n)
+    {
+	int i = 0;
+	int child;
+
+	while ((child = 2 * i + 1) < n) {
+	    if (child + 1 < n && window[child + 1].compareTo(window[child]) > 0) {
+		child++;
+	    }
+	    if (e.compareTo(window[child]) >= 0) {
+		break;
+	    }
+	    window[i] = window[child];
+	    i = child;
+	}
+
+	window[i] = e;
+    }
+
+	// the returned event and its seq are the handle to cancel it with
+	public SimulatedEvent schedule(SimulatedEvent e){
+		e.seq = nextSeq(e.hostCreated);
+		e.cancelled = false;
+		e.queued = true;
+		timeline.add(e);
+		return e;
+	}
+
+	// schedules a recycled event startoffset bit times from now
+	public SimulatedEvent schedule(SimulatedEvent.SimEvtType type, double startoffset, int host,
+				       int repeaterInd, boolean justMyself){
+		SimulatedEvent e = obtain();
+		e.set(type, currentTime + startoffset, startoffset, host, repeaterInd, justMyself);
+		return schedule(e);
+	}
+
+	// schedules the arrival of a broadcast on one segment, see Propagator
+	public SimulatedEvent scheduleArrival(SimulatedEvent.SimEvtType type, double delay, int host,
+					      int repeaterInd, int segment){
+		SimulatedEvent e = obtain();
+		e.set(type, currentTime + delay, delay, host, repeaterInd, true);
+		e.segment = segment;
+
+		if (localSegment >= 0 && segment != localSegment) {
+		    e.seq = nextSeq(host);
+		    e.cancelled = false;
+		    e.queued = true;
+		    outbox.add(e);
+		    return e;
+		}
+
+		return schedule(e);
+	}
+
+	// Numbers events per host rather than globally, so that events at the same
+	// instant come out in the same order whether the hosts share one timeline
+	// or are spread over the segments of a ParallelTime.
+	private long nextSeq(int host){
+		if (host < 0 || host >= MAX_HOSTS) {
+		    throw new IllegalArgumentException("Host id out of range: " + host);
+		}
+
+		if (host >= issued.length) {
+		    long[] grown = new long[Math.max(host + 1, 2 * issued.length)];
+		    System.arraycopy(issued, 0, grown, 0, issued.length);
+		    issued = grown;
+		}
+
+		return (issued[host]++ << HOST_BITS) | host;
+	}
+
+	// Marks a pending event dead instead of digging it out of the timeline;
+	// elapse() drops it when it comes up.  Returns false if the event already
+	// ran or was cancelled before.  Events are recycled once they run, so a
+	// handle kept past that point may now be some other event; seq is the
+	// event's seq as read right after schedule() and tells the two apart.
+	public boolean cancel(SimulatedEvent e, long seq){
+		if (e == null || e.seq != seq || !e.queued || e.cancelled) {
+		    return false;
+		}
+
+		e.cancelled = true;
+		deadCount++;
+
+		if (deadCount >= COMPACT_MIN_DEAD && 2 * deadCount >= timeline.size()) {
+		    compact();
+		}
+
+		return true;
+	}
+
+	// sweeps the cancelled events out of the timeline in one pass
+	public void compact(){
+		SimulatedEvent dead = timeline.removeCancelled();
+
+		while (dead != null) {
+		    SimulatedEvent next = dead.next;
+		    deadCount--;
+		    release(dead);
+		    dead = next;
+		}
+	}
+
+	// Writes the configuration, clock, every live pending event and every
+	// host; readState() rebuilds an identical SimulatedTime from it.
+	public void writeState(DataOutput out) throws IOException {
+		config.writeTo(out);
+
+		out.writeDouble(currentTime);
+
+		out.writeInt(issued.length);
+
+		for (int i = 0; i < issued.length; i++) {
+		    out.writeLong(issued[i]);
+		}
+
+		out.writeInt(GetTimelineSize());
+
+		Iterator<SimulatedEvent> it = timeline.iterator();
+
+		while (it.hasNext()) {
+		    SimulatedEvent e = it.next();
+
+		    if (!e.cancelled) {
+			out.writeLong(e.seq);
+			out.writeByte(e.evtType.ordinal());
+			out.writeDouble(e.TimeStart);
+			out.writeDouble(e.TimeDuration);
+			out.writeInt(e.hostCreated);
+			out.writeInt(e.RepeaterIndexOfHost);
+			out.writeBoolean(e.justMyself);
+			out.writeInt(e.segment);
+		    }
+		}
+
+		out.writeInt(hostlist.size());
+
+		for (Host h : hostlist) {
+		    h.writeState(out);
+		}
+	}
+
+	public static SimulatedTime readState(DataInput in) throws IOException {
+		SimulatedEvent.SimEvtType[] types = SimulatedEvent.SimEvtType.values();
+
+		SimulatedTime stime = new SimulatedTime(SimConfig.readFrom(in));
+
+		stime.currentTime = in.readDouble();
+
+		stime.issued = new long[in.readInt()];
+
+		for (int i = 0; i < stime.issued.length; i++) {
+		    stime.issued[i] = in.readLong();
+		}
+
+		int pending = in.readInt();
+		HashMap<Long, SimulatedEvent> bySeq = new HashMap<Long, SimulatedEvent>();
+
+		for (int i = 0; i < pending; i++) {
+		    SimulatedEvent e = stime.obtain();
+
+		    e.seq = in.readLong();
+		    e.set(types[in.readByte()], 0, 0, 0, 0, false);
+		    e.TimeStart = in.readDouble();
+		    e.TimeDuration = in.readDouble();
+		    e.hostCreated = in.readInt();
+		    e.RepeaterIndexOfHost = in.readInt();
+		    e.justMyself = in.readBoolean();
+		    e.segment = in.readInt();
+
+		    // keep the saved seq so ties come out in the same order as before
+		    e.cancelled = false;
+		    e.queued = true;
+		    stime.timeline.add(e);
+
+		    bySeq.put(e.seq, e);
+		}
+
+		int numHosts = in.readInt();
+
+		for (int i = 0; i < numHosts; i++) {
+		    Host h = new Host(stime, in);
+
+		    h.expectedTransDone = bySeq.get(h.s.expectedTransDoneSeq[h.slot]);
+		    stime.addHost(h);
+		}
+
+		return stime;
+	}
+
+	// takes the next live event out of the timeline, null once it is empty
+	SimulatedEvent takeNext(){
+		if (nextEventTime() == Double.POSITIVE_INFINITY) {
+		    return null;
+		}
+
+		SimulatedEvent e = timeline.poll();
+		e.queued = false;
+		return e;
+	}
+
+	// queues an event that was numbered by another SimulatedTime
+	void put(SimulatedEvent e){
+		e.queued = true;
+		timeline.add(e);
+	}
+
+	// takes back the clock and the given host's counter from a segment
+	void rejoin(SimulatedTime segment, int host){
+		currentTime = Math.max(currentTime, segment.currentTime);
+
+		if (host < segment.issued.length) {
+		    if (host >= issued.length) {
+			long[] grown = new long[segment.issued.length];
+			System.arraycopy(issued, 0, grown, 0, issued.length);
+			issued = grown;
+		    }
+
+		    issued[host] = segment.issued[host];
+		}
+	}
+
+	private SimulatedEvent obtain(){
+		SimulatedEvent e = freeList;
+
+		if (e == null) {
+		    return new SimulatedEvent();
+		}
+
+		freeList = e.next;
+		e.next = null;
+		return e;
 	}
 
-	public boolean deschedule(SimulatedEvent e){
-		return timeline.remove(e);
+	private void release(SimulatedEvent e){
+		e.queued = false;
+		e.next = freeList;
+		freeList = e;
 	}
 
    
@@ -0,0 +1,433 @@
+/*
+ * Topology:
+ *      Where every host sits and how it comes up with packets, held in flat
+ *      arrays indexed by host id and repeater index, together with the
+ *      repeater-to-repeater delay table the Propagator builds its segments
+ *      from.  Standard() lays out the network from the paper; load() reads
+ *      any other layout from a text file, one directive per line and '#' to
+ *      the end of a line a comment:
+ *
+ *          repeater <index> <position in feet> [drop <feet>]
+ *          hosts <first>[-<last>] repeater <index> [packet <bytes>] [arrival <process>]
+ *
+ *      Repeaters sit along one backbone; drop is the cable from a repeater
+ *      to each of its hosts, 20 feet unless given.  Repeater indices run
+ *      from 0 to MAX_REPEATERS - 1 and may leave gaps.  Hosts have to be numbered
+ *      from 0 up without gaps.  packet overrides the run's packet size for
+ *      those hosts, and <process> is one of
+ *
+ *          uniform <min> <max>   next packet ready min to max bit times after the last one
+ *          poisson <mean>        exponential gaps with the given mean, in bit times
+ *          onoff <on> <off>      bursts of uniform gaps, with exponential on and
+ *                                off periods of the given mean lengths
+ *
+ *      A host without an arrival process, and the uniform gaps within an
+ *      on/off burst, use SimConfig's minProcessTime and maxProcessTime.
+ */
+
+package Ethernet;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class Topology {
+
+    // arrival processes, see Host.RandomProcessTime
+    public static final byte ARRIVAL_DEFAULT = 0;
+    public static final byte ARRIVAL_UNIFORM = 1;
+    public static final byte ARRIVAL_POISSON = 2;
+    public static final byte ARRIVAL_ONOFF = 3;
+
+    // Repeater indices stay below this.  The delay tables are square in the
+    // highest index, so an unbounded one could ask for gigabytes; at this
+    // size they take 16 MB.
+    public static final int MAX_REPEATERS = 1024;
+
+    // per host: its repeater, its packet size in bytes (0 for the run's), and
+    // its arrival process with up to two parameters
+    final int[] hostRepeater;
+    final int[] hostPacketBytes;
+    final byte[] arrival;
+    final double[] arrivalA;
+    final double[] arrivalB;
+
+    // per repeater: feet along the backbone and down to its hosts, NaN for
+    // an index that was never given
+    final double[] repeaterPosition;
+    final double[] repeaterDrop;
+
+    // bit times between two repeaters along the backbone, and from a host on
+    // one to a host on the other
+    private double[][] backbone;
+    private double[][] delay;
+
+    private Topology(int[] hostRepeater, int[] hostPacketBytes, byte[] arrival, double[] arrivalA,
+		     double[] arrivalB, double[] repeaterPosition, double[] repeaterDrop) {
+	this.hostRepeater = hostRepeater;
+	this.hostPacketBytes = hostPacketBytes;
+	this.arrival = arrival;
+	this.arrivalA = arrivalA;
+	this.arrivalB = arrivalB;
+	this.repeaterPosition = repeaterPosition;
+	this.repeaterDrop = repeaterDrop;
+
+	tabulate();
+    }
+
+    // Groups of six hosts on repeaters 1000 feet apart, or for the fairness
+    // test hosts 0-3 on repeater 0 and everyone else on repeater 10.
+    public static Topology Standard(SimConfig config) {
+	int numHosts = config.numHosts;
+	int[] hostRepeater = new int[numHosts];
+
+	for (int i = 0; i < numHosts; i++) {
+	    if (config.fairnessMode) {
+		hostRepeater[i] = (i < 4) ? 0 : 10;
+	    } else {
+		hostRepeater[i] = i / 6;
+	    }
+	}
+
+	int numRepeaters = 0;
+
+	for (int i = 0; i < numHosts; i++) {
+	    numRepeaters = Math.max(numRepeaters, hostRepeater[i] + 1);
+	}
+
+	if (numRepeaters > MAX_REPEATERS) {
+	    throw new IllegalArgumentException(numHosts + " hosts need more than " + MAX_REPEATERS + " repeaters");
+	}
+
+	double[] repeaterPosition = new double[numRepeaters];
+	double[] repeaterDrop = new double[numRepeaters];
+
+	for (int r = 0; r < numRepeaters; r++) {
+	    repeaterPosition[r] = r * 1000.0;
+	    repeaterDrop[r] = Host.DISTANCE_TO_REPEATER;
+	}
+
+	return new Topology(hostRepeater, new int[numHosts], new byte[numHosts], new double[numHosts],
+			    new double[numHosts], repeaterPosition, repeaterDrop);
+    }
+
+    public static Topology load(File file) throws IOException {
+	BufferedReader in = new BufferedReader(new FileReader(file));
+
+	try {
+	    return parse(in, file.getPath());
+	} finally {
+	    in.close();
+	}
+    }
+
+    public static Topology parse(BufferedReader in, String source) throws IOException {
+	int[] hostRepeater = new int[0];
+	int[] hostPacketBytes = new int[0];
+	byte[] arrival = new byte[0];
+	double[] arrivalA = new double[0];
+	double[] arrivalB = new double[0];
+	boolean[] placed = new boolean[0];
+	int numHosts = 0;
+
+	double[] repeaterPosition = new double[0];
+	double[] repeaterDrop = new double[0];
+
+	String line;
+	int lineNum = 0;
+
+	while ((line = in.readLine()) != null) {
+	    lineNum++;
+
+	    int hash = line.indexOf('#');
+
+	    if (hash >= 0) {
+		line = line.substring(0, hash);
+	    }
+
+	    line = line.trim();
+
+	    if (line.length() == 0) {
+		continue;
+	    }
+
+	    String[] words = line.split("\\s+");
+	    String where = source + ":" + lineNum + ": ";
+
+	    try {
+		if (words[0].equals("repeater")) {
+		    if (words.length != 3 && !(words.length == 5 && words[3].equals("drop"))) {
+			throw new IOException(where + "expected repeater <index> <position> [drop <feet>]");
+		    }
+
+		    int r = parseIndex(words[1], MAX_REPEATERS, where + "repeater index");
+
+		    if (r >= repeaterPosition.length) {
+			repeaterPosition = grow(repeaterPosition, r + 1);
+			repeaterDrop = grow(repeaterDrop, r + 1);
+		    }
+
+		    if (!Double.isNaN(repeaterPosition[r])) {
+			throw new IOException(where + "repeater " + r + " given twice");
+		    }
+
+		    repeaterPosition[r] = Double.parseDouble(words[2]);
+		    repeaterDrop[r] = (words.length == 5) ? Double.parseDouble(words[4]) : Host.DISTANCE_TO_REPEATER;
+
+		    if (Double.isNaN(repeaterPosition[r]) || Double.isInfinite(repeaterPosition[r]) || !(repeaterDrop[r] >= 0)) {
+			throw new IOException(where + "bad position or drop for repeater " + r);
+		    }
+		} else if (words[0].equals("hosts")) {
+		    int dash = words[1].indexOf('-');
+		    int first = parseIndex(dash < 0 ? words[1] : words[1].substring(0, dash), SimulatedTime.MAX_HOSTS,
+					   where + "host id");
+		    int last = (dash < 0) ? first : parseIndex(words[1].substring(dash + 1), SimulatedTime.MAX_HOSTS,
+							       where + "host id");
+
+		    if (last < first) {
+			throw new IOException(where + "empty host range " + words[1]);
+		    }
+
+		    int repeater = -1;
+		    int packetBytes = 0;
+		    byte process = ARRIVAL_DEFAULT;
+		    double a = 0;
+		    double b = 0;
+
+		    for (int w = 2; w < words.length; w++) {
+			if (words[w].equals("repeater") && w + 1 < words.length) {
+			    repeater = parseIndex(words[++w], MAX_REPEATERS, where + "repeater index");
+			} else if (words[w].equals("packet") && w + 1 < words.length) {
+			    packetBytes = Integer.parseInt(words[++w]);
+
+			    if (packetBytes <= 0) {
+				throw new IOException(where + "packet size has to be positive");
+			    }
+			} else if (words[w].equals("arrival") && w + 1 < words.length) {
+			    String kind = words[++w];
+
+			    if (kind.equals("uniform")) {
+				process = ARRIVAL_UNIFORM;
+				a = Integer.parseInt(words[++w]);
+				b = Integer.parseInt(words[++w]);
+
+				if (a < 0 || b <= a) {
+				    throw new IOException(where + "uniform arrivals need 0 <= min < max");
+				}
+			    } else if (kind.equals("poisson")) {
+				process = ARRIVAL_POISSON;
+				a = Double.parseDouble(words[++w]);
+
+				if (!(a > 0)) {
+				    throw new IOException(where + "poisson arrivals need a positive mean");
+				}
+			    } else if (kind.equals("onoff")) {
+				process = ARRIVAL_ONOFF;
+				a = Double.parseDouble(words[++w]);
+				b = Double.parseDouble(words[++w]);
+
+				if (!(a > 0) || !(b >= 0)) {
+				    throw new IOException(where + "on/off arrivals need a positive on and a non-negative off period");
+				}
+			    } else {
+				throw new IOException(where + "unknown arrival process " + kind);
+			    }
+			} else {
+			    throw new IOException(where + "unexpected " + words[w]);
+			}
+		    }
+
+		    if (repeater < 0) {
+			throw new IOException(where + "hosts " + words[1] + " need a repeater");
+		    }
+
+		    if (last >= hostRepeater.length) {
+			int size = Math.max(last + 1, 2 * hostRepeater.length);
+
+			hostRepeater = Arrays.copyOf(hostRepeater, size);
+			hostPacketBytes = Arrays.copyOf(hostPacketBytes, size);
+			arrival = Arrays.copyOf(arrival, size);
+			arrivalA = Arrays.copyOf(arrivalA, size);
+			arrivalB = Arrays.copyOf(arrivalB, size);
+			placed = Arrays.copyOf(placed, size);
+		    }
+
+		    for (int h = first; h <= last; h++) {
+			if (placed[h]) {
+			    throw new IOException(where + "host " + h + " placed twice");
+			}
+
+			placed[h] = true;
+			hostRepeater[h] = repeater;
+			hostPacketBytes[h] = packetBytes;
+			arrival[h] = process;
+			arrivalA[h] = a;
+			arrivalB[h] = b;
+		    }
+
+		    numHosts = Math.max(numHosts, last + 1);
+		} else {
+		    throw new IOException(where + "unknown directive " + words[0]);
+		}
+	    } catch (NumberFormatException e) {
+		throw new IOException(where + "bad number: " + e.getMessage());
+	    } catch (ArrayIndexOutOfBoundsException e) {
+		throw new IOException(where + "incomplete line");
+	    }
+	}
+
+	if (numHosts == 0) {
+	    throw new IOException(source + ": no hosts");
+	}
+
+	for (int h = 0; h < numHosts; h++) {
+	    if (!placed[h]) {
+		throw new IOException(source + ": host " + h + " is missing");
+	    }
+
+	    int r = hostRepeater[h];
+
+	    if (r >= repeaterPosition.length || Double.isNaN(repeaterPosition[r])) {
+		throw new IOException(source + ": host " + h + " is on repeater " + r + ", which is not given");
+	    }
+	}
+
+	return new Topology(Arrays.copyOf(hostRepeater, numHosts), Arrays.copyOf(hostPacketBytes, numHosts),
+			    Arrays.copyOf(arrival, numHosts), Arrays.copyOf(arrivalA, numHosts),
+			    Arrays.copyOf(arrivalB, numHosts), repeaterPosition, repeaterDrop);
+    }
+
+    public int getNumHosts() {
+	return hostRepeater.length;
+    }
+
+    public int getNumRepeaters() {
+	return repeaterPosition.length;
+    }
+
+    public int getRepeaterOf(int host) {
+	return hostRepeater[host];
+    }
+
+    // the host's own packet size in bytes, or 0 when it sends the run's
+    public int getPacketBytes(int host) {
+	return hostPacketBytes[host];
+    }
+
+    public byte getArrival(int host) {
+	return arrival[host];
+    }
+
+    // bit times for a signal to run along the backbone between two repeaters
+    public double getBackboneDelay(int fromRepeater, int toRepeater) {
+	return backbone[fromRepeater][toRepeater];
+    }
+
+    // bit times for a signal from a host on one repeater to reach a host on another
+    public double getDelay(int fromRepeater, int toRepeater) {
+	return delay[fromRepeater][toRepeater];
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+	out.writeInt(hostRepeater.length);
+
+	for (int h = 0; h < hostRepeater.length; h++) {
+	    out.writeInt(hostRepeater[h]);
+	    out.writeInt(hostPacketBytes[h]);
+	    out.writeByte(arrival[h]);
+	    out.writeDouble(arrivalA[h]);
+	    out.writeDouble(arrivalB[h]);
+	}
+
+	out.writeInt(repeaterPosition.length);
+
+	for (int r = 0; r < repeaterPosition.length; r++) {
+	    out.writeDouble(repeaterPosition[r]);
+	    out.writeDouble(repeaterDrop[r]);
+	}
+    }
+
+    public static Topology readFrom(DataInput in) throws IOException {
+	int numHosts = in.readInt();
+
+	int[] hostRepeater = new int[numHosts];
+	int[] hostPacketBytes = new int[numHosts];
+	byte[] arrival = new byte[numHosts];
+	double[] arrivalA = new double[numHosts];
+	double[] arrivalB = new double[numHosts];
+
+	for (int h = 0; h < numHosts; h++) {
+	    hostRepeater[h] = in.readInt();
+	    hostPacketBytes[h] = in.readInt();
+	    arrival[h] = in.readByte();
+	    arrivalA[h] = in.readDouble();
+	    arrivalB[h] = in.readDouble();
+	}
+
+	int numRepeaters = in.readInt();
+
+	if (numRepeaters <= 0 || numRepeaters > MAX_REPEATERS) {
+	    throw new IOException("Bad repeater count " + numRepeaters);
+	}
+
+	double[] repeaterPosition = new double[numRepeaters];
+	double[] repeaterDrop = new double[numRepeaters];
+
+	for (int r = 0; r < numRepeaters; r++) {
+	    repeaterPosition[r] = in.readDouble();
+	    repeaterDrop[r] = in.readDouble();
+	}
+
+	return new Topology(hostRepeater, hostPacketBytes, arrival, arrivalA, arrivalB, repeaterPosition, repeaterDrop);
+    }
+
+    public String toString() {
+	int used = 0;
+	boolean[] seen = new boolean[repeaterPosition.length];
+
+	for (int h = 0; h < hostRepeater.length; h++) {
+	    if (!seen[hostRepeater[h]]) {
+		seen[hostRepeater[h]] = true;
+		used++;
+	    }
+	}
+
+	return hostRepeater.length + " hosts on " + used + " repeaters";
+    }
+
+    // the delay tables, worked out once so that nothing downstream measures distances again
+    private void tabulate() {
+	int n = repeaterPosition.length;
+
+	backbone = new double[n][n];
+	delay = new double[n][n];
+
+	for (int a = 0; a < n; a++) {
+	    for (int b = 0; b < n; b++) {
+		backbone[a][b] = Math.abs(repeaterPosition[a] - repeaterPosition[b]) / Host.FEET_PER_BIT;
+		delay[a][b] = (repeaterDrop[a] + repeaterDrop[b]) / Host.FEET_PER_BIT + backbone[a][b];
+	    }
+	}
+    }
+
+    private static int parseIndex(String word, int limit, String what) throws IOException {
+	int i = Integer.parseInt(word);
+
+	if (i < 0 || i >= limit) {
+	    throw new IOException(what + " out of range: " + word);
+	}
+
+	return i;
+    }
+
+    private static double[] grow(double[] a, int size) {
+	double[] grown = Arrays.copyOf(a, size);
+
+	Arrays.fill(grown, a.length, size, Double.NaN);
+	return grown;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * TraceReader:
+ *      Streams the records of a TraceWriter file back without loading the
+ *      whole thing.  Narrow what comes back with the setters, then call next()
+ *      until it returns false; the getters describe the current record.
+ *
+ *          TraceReader in = new TraceReader(file);
+ *          in.setHost(3);
+ *          in.setTimeRange(5.0e7, 6.0e7);
+ *          while (in.next()) { ... in.getTimeStart() ... }
+ *          in.close();
+ */
+
+package Ethernet;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class TraceReader {
+
+    private static final SimulatedEvent.SimEvtType[] TYPES = SimulatedEvent.SimEvtType.values();
+
+    private FileInputStream in;
+    private FileChannel channel;
+    private ByteBuffer buf;
+
+    private int experimentID;
+    private long seed;
+
+    // filters; -1 and null mean anything goes
+    private int hostFilter = -1;
+    private boolean[] typeFilter = null;
+    private double fromTime = Double.NEGATIVE_INFINITY;
+    private double toTime = Double.POSITIVE_INFINITY;
+
+    // the current record
+    private double timeStart;
+    private double timeDuration;
+    private int host;
+    private SimulatedEvent.SimEvtType type;
+    private boolean self;
+    private int segment;
+
+    public TraceReader(File file) throws IOException {
+	in = new FileInputStream(file);
+	channel = in.getChannel();
+
+	buf = ByteBuffer.allocateDirect(64 * 1024).order(TraceWriter.ORDER);
+	buf.flip();
+
+	if (!fill(TraceWriter.HEADER_SIZE)) {
+	    throw new EOFException("Trace " + file + " has no header");
+	}
+
+	int magic = buf.getInt();
+	short version = buf.getShort();
+	short recordSize = buf.getShort();
+
+	if (magic != TraceWriter.MAGIC || version != TraceWriter.VERSION || recordSize != TraceWriter.RECORD_SIZE) {
+	    throw new IOException("Not a version " + TraceWriter.VERSION + " trace: " + file);
+	}
+
+	experimentID = buf.getInt();
+	buf.getInt();
+	seed = buf.getLong();
+    }
+
+    public int getExperimentID() {
+	return experimentID;
+    }
+
+    public long getSeed() {
+	return seed;
+    }
+
+    public void setHost(int hostId) {
+	hostFilter = hostId;
+    }
+
+    // passing no types lets every type through again
+    public void setTypes(SimulatedEvent.SimEvtType... types) {
+	if (types.length == 0) {
+	    typeFilter = null;
+	    return;
+	}
+
+	typeFilter = new boolean[TYPES.length];
+
+	for (SimulatedEvent.SimEvtType t : types) {
+	    typeFilter[t.ordinal()] = true;
+	}
+    }
+
+    // records with from <= time start < to
+    public void setTimeRange(double from, double to) {
+	fromTime = from;
+	toTime = to;
+    }
+
+    // moves to the next record that passes the filters
+    public boolean next() throws IOException {
+	while (fill(TraceWriter.RECORD_SIZE)) {
+	    timeStart = buf.getDouble();
+	    timeDuration = buf.getDouble();
+	    host = buf.getInt();
+	    type = TYPES[buf.get()];
+	    self = buf.get() != 0;
+	    segment = buf.getShort();
+
+	    // events are written in the order they ran, so nothing later can qualify
+	    if (timeStart >= toTime) {
+		return false;
+	    }
+
+	    if ((hostFilter < 0 || host == hostFilter)
+		&& (typeFilter == null || typeFilter[type.ordinal()])
+		&& timeStart >= fromTime) {
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    public double getTimeStart() {
+	return timeStart;
+    }
+
+    public double getTimeDuration() {
+	return timeDuration;
+    }
+
+    public int getHost() {
+	return host;
+    }
+
+    public SimulatedEvent.SimEvtType getEventType() {
+	return type;
+    }
+
+    public boolean isSelfEvent() {
+	return self;
+    }
+
+    // Propagator segment of an arrival, or -1
+    public int getSegment() {
+	return segment;
+    }
+
+    public void close() throws IOException {
+	in.close();
+    }
+
+    // makes sure at least n bytes are buffered; false at a clean end of file
+    private boolean fill(int n) throws IOException {
+	if (buf.remaining() >= n) {
+	    return true;
+	}
+
+	buf.compact();
+
+	while (buf.position() < n) {
+	    if (channel.read(buf) < 0) {
+		buf.flip();
+
+		if (buf.hasRemaining()) {
+		    throw new EOFException("Trace ends partway through a record");
+		}
+
+		return false;
+	    }
+	}
+
+	buf.flip();
+	return true;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * EventBatch :
+ *      A fixed block of experiment_event rows held in primitive arrays, so
+ *      logging an event is a few array stores.  Batches go back and forth
+ *      between a simulation thread filling them and the EventLogSink thread
+ *      writing them out.
+ */
+
+import Ethernet.SimulatedEvent;
+
+public class EventBatch
+{
+    public int experimentID;
+    public int count = 0;
+
+    public double[] timeStart;
+    public double[] timeDuration;
+    public SimulatedEvent.SimEvtType[] evtType;
+    public int[] hostID;
+    public boolean[] isSelfEvt;
+
+    // when the first row went in, for the sink's flush interval
+    public long firstNanos;
+
+    public EventBatch(int capacity)
+    {
+	timeStart = new double[capacity];
+	timeDuration = new double[capacity];
+	evtType = new SimulatedEvent.SimEvtType[capacity];
+	hostID = new int[capacity];
+	isSelfEvt = new boolean[capacity];
+    }
+
+    public boolean isFull()
+    {
+	return count == timeStart.length;
+    }
+
+    public void add(double start, double duration, SimulatedEvent.SimEvtType type, int host, boolean self)
+    {
+	if(count == 0)
+	    {
+		firstNanos = System.nanoTime();
+	    }
+
+	timeStart[count] = start;
+	timeDuration[count] = duration;
+	evtType[count] = type;
+	hostID[count] = host;
+	isSelfEvt[count] = self;
+	count++;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * EventLogSink :
+ *      Buffered writer for experiment_event.  Simulation threads fill
+ *      EventBatches through a Producer and hand full ones to a bounded queue;
+ *      one background thread drains the queue into SQLite, one transaction
+ *      and one executeBatch per batch on a single reused prepared statement.
+ *      The simulation never waits on SQLite: if the queue is full the batch is
+ *      dropped and counted rather than blocking the elapse loop.
+ */
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Ethernet.SimulatedEvent;
+
+public class EventLogSink implements Runnable
+{
+    static Logger logger = Logger.getLogger(EventLogSink.class);
+
+    private SQLiteLogger db;
+
+    private int batchSize;
+    private long flushNanos;
+
+    // full batches waiting to be written, and written ones waiting to be reused
+    private BlockingQueue<EventBatch> pending;
+    private BlockingQueue<EventBatch> free;
+
+    private AtomicLong droppedEvents = new AtomicLong();
+    private AtomicLong writtenEvents = new AtomicLong();
+
+    private Thread writer;
+    private volatile boolean closing = false;
+
+    public EventLogSink(SQLiteLogger db, int batchSize, long flushMillis, int maxQueuedBatches)
+    {
+	this.db = db;
+	this.batchSize = batchSize;
+	this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+
+	pending = new ArrayBlockingQueue<EventBatch>(maxQueuedBatches);
+	free = new ArrayBlockingQueue<EventBatch>(maxQueuedBatches);
+    }
+
+    public void start()
+    {
+	writer = new Thread(this, "EventLogSink");
+	writer.setDaemon(true);
+	writer.start();
+    }
+
+    // one per simulation run; a Producer must only be used from one thread
+    public Producer newProducer(int experimentID)
+    {
+	return new Producer(experimentID);
+    }
+
+    public long getDroppedEvents()
+    {
+	return droppedEvents.get();
+    }
+
+    public long getWrittenEvents()
+    {
+	return writtenEvents.get();
+    }
+
+    public void run()
+    {
+	try
+	    {
+		while(!closing || !pending.isEmpty())
+		    {
+			EventBatch batch = pending.poll(TimeUnit.NANOSECONDS.toMillis(flushNanos), TimeUnit.MILLISECONDS);
+
+			if(batch != null)
+			    {
+				write(batch);
+			    }
+		    }
+	    }
+	catch(InterruptedException e)
+	    {
+		logger.error("Event writer interrupted with " + pending.size() + " batches queued");
+	    }
+    }
+
+    // waits for everything already queued to reach the database
+    public void close()
+    {
+	closing = true;
+
+	try
+	    {
+		writer.join();
+	    }
+	catch(InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+	    }
+
+	if(droppedEvents.get() > 0)
+	    {
+		logger.warn("Dropped " + droppedEvents.get() + " events because the event queue was full");
+	    }
+
+	logger.info("Wrote " + writtenEvents.get() + " events");
+    }
+
+    private void write(EventBatch batch)
+    {
+	if(db.CreateNewEvents(batch))
+	    {
+		writtenEvents.addAndGet(batch.count);
+	    }
+	else
+	    {
+		droppedEvents.addAndGet(batch.count);
+	    }
+
+	batch.count = 0;
+	free.offer(batch);
+    }
+
+    private EventBatch obtain(int experimentID)
+    {
+	EventBatch batch = free.poll();
+
+	if(batch == null)
+	    {
+		batch = new EventBatch(batchSize);
+	    }
+
+	batch.experimentID = experimentID;
+	batch.count = 0;
+
+	return batch;
+    }
+
+    public class Producer
+    {
+	private int experimentID;
+	private EventBatch current;
+
+	Producer(int experimentID)
+	{
+	    this.experimentID = experimentID;
+	    current = obtain(experimentID);
+	}
+
+	public void log(double timeStart, double timeDuration, SimulatedEvent.SimEvtType type, int hostID, boolean isSelfEvt)
+	{
+	    current.add(timeStart, timeDuration, type, hostID, isSelfEvt);
+
+	    // only look at the clock every so often, it costs more than the store
+	    if(current.isFull() || ((current.count & 255) == 0 && System.nanoTime() - current.firstNanos > flushNanos))
+		{
+		    flush();
+		}
+	}
+
+	// hands whatever has been logged so far to the writer thread
+	public void flush()
+	{
+	    if(current.count == 0)
+		{
+		    return;
+		}
+
+	    if(!pending.offer(current))
+		{
+		    droppedEvents.addAndGet(current.count);
+		    current.count = 0;
+		    return;
+		}
+
+	    current = obtain(experimentID);
+	}
+    }
+}
@@ -19,7 +19,6 @@ import java.io.*;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.lang.Math;
-import java.util.Random;
 import java.util.UUID;
 
 import java.util.Date;
@@ -38,18 +37,34 @@ public class Initializer
 
     private SQLiteLogger sqlEvtLogger;
 
-    private static int MAX_EXPERIMENT_TIME = 150000000; // 15 seconds * 10^7 Mbits/second, which is 10 seconds + 5 seconds of stabilization
-    private static int MIN_MEASUREMENT_TIME = 50000000; // 5 seconds * 10^7 MBits/second to stabilize
-    
-    //private static int STDOUT_REPORT_INTERVAL = 5000000; // print something to standard out every half second of simulation elapse
+    // run length, measurement start, topology and process times live in SimConfig
+    private static SimConfig BASE_CONFIG = new SimConfig();
     
+    // -Dethsim.logEvents=true records individual events in experiment_event
+    private static boolean LOG_EVENTS = Boolean.getBoolean("ethsim.logEvents");
+
+    // rows per transaction, longest a partial batch waits, and batches that may queue up
+    private static int EVENT_BATCH_SIZE = 4096;
+    private static long EVENT_FLUSH_MILLIS = 1000;
+    private static int EVENT_QUEUE_BATCHES = 64;
+
+    private static EventLogSink eventSink = null;
+
+    // -Dethsim.traceDir=<dir> writes a binary trace of every run there, see TraceImporter
+    private static String TRACE_DIR = System.getProperty("ethsim.traceDir");
+
+    // -Dethsim.topology=<file> lays the network out from a file instead, see Topology
+    private static String TOPOLOGY_FILE = System.getProperty("ethsim.topology");
 
     // an ArrayList of packet sizes in bytes as ints
-    private static ArrayList<Integer> PACKET_SIZE_LIST = new ArrayList<Integer>(Arrays.asList(64, 128, 256, 512, 768, 1024, 1536, 2048, 3072, 4000));
+    static ArrayList<Integer> PACKET_SIZE_LIST = new ArrayList<Integer>(Arrays.asList(64, 128, 256, 512, 768, 1024, 1536, 2048, 3072, 4000));
 
     // number of times to run a simulation for a set of transmitting host numbers and packet sizes
     private static int NUM_TRIALS_PER_CONFIG = 1;
 
+    // transmitting host counts covered by the headless sweep, up to every host in the network
+    static int MIN_SWEEP_HOSTS = 2;
+
     public Initializer(String dbFileLoc)
     {
 	try
@@ -72,8 +87,35 @@ public class Initializer
 	URL confResource = Initializer.class.getResource(propFile);
 	PropertyConfigurator.configure(confResource);
 
+	SimMetrics.StartFromProperty();
+
+	// "batch [spec file] [key=value]..." runs a whole sweep unattended, see BatchRunner
+	if(args.length > 0 && args[0].equals("batch"))
+	    {
+		System.exit(BatchRunner.Run(Arrays.copyOfRange(args, 1, args.length)));
+	    }
+
 	logger.info("Initializing");
 
+	if(TOPOLOGY_FILE != null)
+	    {
+		try
+		    {
+			BASE_CONFIG.topology = Topology.load(new File(TOPOLOGY_FILE));
+			BASE_CONFIG.numHosts = BASE_CONFIG.topology.getNumHosts();
+
+			logger.info("Topology " + TOPOLOGY_FILE + ": " + BASE_CONFIG.topology);
+		    }
+		catch(IOException e)
+		    {
+			logger.error("Unable to read topology: " + e.getMessage());
+
+			return;
+		    }
+	    }
+
+	logger.info("Event queue: " + BASE_CONFIG.queueKind + (BASE_CONFIG.parallel ? ", one thread per repeater segment" : ""));
+
 	System.out.println("EthernetSimulator by Nathaniel Lim and Lee Wang");
 
 	System.out.println("Type \"quit\" at any time to exit this program.");
@@ -92,10 +134,35 @@ public class Initializer
 	// keep track of the standard representation of current datetime
 	Date curDate = new Date();
 
-	// new experiment with 24 hosts
-	int newExperimentID = curLogger.CreateNewExperiment(curUnixTime, curDate.toString(), 24);
+	// new experiment with every host in the network
+	int newExperimentID = curLogger.CreateNewExperiment(curUnixTime, curDate.toString(), BASE_CONFIG.numHosts, BASE_CONFIG.seed);
+
+	logger.info("New experiment ID: " + newExperimentID + "; seed " + BASE_CONFIG.seed + " (replay with -Dethsim.seed=" + BASE_CONFIG.seed + ")");
+
+	if(LOG_EVENTS)
+	    {
+		eventSink = new EventLogSink(curLogger, EVENT_BATCH_SIZE, EVENT_FLUSH_MILLIS, EVENT_QUEUE_BATCHES);
+		eventSink.start();
+	    }
+
+	// "sweep [threads]" runs every configuration in parallel without asking
+	if(args.length > 0 && args[0].equals("sweep"))
+	    {
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		RunSweep(threads, curLogger, newExperimentID);
+
+		if(eventSink != null)
+		    {
+			eventSink.close();
+		    }
+
+		curLogger.close();
 
-	logger.info("New experiment ID: " + newExperimentID);
+		logger.info("Done");
+
+		return;
+	    }
 
 	do
 	    {
@@ -123,7 +190,7 @@ public class Initializer
 						    {
 							System.out.println("Initializing simulation with " + activeHosts + " transmitting hosts and " + PACKET_SIZE_LIST.get(packSize) + " byte sized packets. Trial " + numTrial);
 							
-							RunSimulationWithHostNumAndPacketSize(activeHosts, PACKET_SIZE_LIST.get(packSize), curLogger, newExperimentID);
+							RunSimulationWithHostNumAndPacketSize(BASE_CONFIG.copy(), activeHosts, PACKET_SIZE_LIST.get(packSize), numTrial, curLogger, newExperimentID);
 						    }
 					    }
 					//    }
@@ -142,6 +209,11 @@ public class Initializer
 	while(!curInput.equals("quit"));
 
 
+	if(eventSink != null)
+	    {
+		eventSink.close();
+	    }
+
 	curLogger.close();
 
 
@@ -150,171 +222,44 @@ public class Initializer
 
 
 
-    public static void RunSimulationWithHostNumAndPacketSize(int activeHosts, int packSizeForThisExperiment,
-							     SQLiteLogger curLogger, int newExperimentID)
+    public static void RunSimulationWithHostNumAndPacketSize(SimConfig config, int activeHosts, int packSizeForThisExperiment,
+							     int numTrial, SQLiteLogger curLogger, int newExperimentID)
     {
-	// number of hosts to run experiment on, 24 from paper where 0-5, 6-11, 12-17, 18-23
-	//     where on the same repeater so where 20 feet * 2 from each other, but inbetween
-	//     the groups of hosts, there were 1000 feet so you need to take the 
-	//     abs((floor(host id) / 6) - floor(other host id) / 6) * 1000 feet to find the
-	//     distance between them in feet, then its 65.62 feet / bit so divide by that
-	//     to find the number of bits between any two hosts
-	int numHosts = 24;
-	
 	if(newExperimentID > 0)
 	    {
-		// create SimulatedTime for this experiment
-		SimulatedTime stime = new SimulatedTime();
-		
-		ArrayList<Host> hostList = new ArrayList<Host>();
-		ArrayList<Integer> hostIndices = new ArrayList<Integer>();
-		
-		// create hosts
-		for(int i = 0; i < numHosts; i++)
+		SimulationRun simRun = new SimulationRun(config, activeHosts, packSizeForThisExperiment, numTrial);
+
+		if(eventSink != null)
 		    {
-			Host hostToAdd = new Host(stime, packSizeForThisExperiment, i);
-			
-			hostList.add(hostToAdd);
-			
-			hostIndices.add(i);
-			
-			stime.addHost(hostToAdd);
-			
-			// debugging, log creation of each host
-			//curLogger.CreateNewHost(newExperimentID, i);
+			simRun.setEventLog(eventSink.newProducer(newExperimentID));
 		    }
-		
-		Random r = new Random();
-		boolean evenTopology = true;
-		if (evenTopology){
-			for(int k = 0; k < activeHosts; k++){
-				Host hostToActivate = hostList.get(hostIndices.get(k));			
-				hostToActivate.scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, hostToActivate.RandomProcessTime(), true);
-		    	}
-		} else {
-			// randomly remove all but activeHosts number of indices from the array containing the all of the host id's
-			for(int j = 0; j < (numHosts - activeHosts); j++) {
-				hostIndices.remove(r.nextInt(hostIndices.size()));
-		    	}
-		
-			// schedule initialization events in the indices that are still active
-			for(int k = 0; k < hostIndices.size(); k++){
-				Host hostToActivate = hostList.get(hostIndices.get(k));			
-				hostToActivate.scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, hostToActivate.RandomProcessTime(), true);
-		    	}			
-		}
-		
-			
-		//logger.info("Beginning elapse loop.");
-				
-		//int curEvtCount = 0;
-		
-		boolean beganMeasuring = false;
-		
-		//int elapseInterval = STDOUT_REPORT_INTERVAL;
-		
-		
-		
-		// run elapse();
-		while(stime.elapse() && stime.getCurrentTime() < MAX_EXPERIMENT_TIME)
+
+		if(TRACE_DIR != null)
 		    {
-			//if(stime.getCurrentTime() > elapseInterval)
-			//{
-			//	System.out.println(stime.getCurrentTime() + " bit times have elapsed; " + stime.GetTimelineSize() + " events in priority queue;");
-				
-			//	elapseInterval += STDOUT_REPORT_INTERVAL;
-			//  }
-			
-			//logger.info("Elapsing");
-			
-			//SimulatedEvent evtToLog = stime.CurrentEvent;
-			
-			//SimulatedEvent.SimEvtType curEvtType = evtToLog.getEventType();
-			
-			// it's working, don't log anything in terms of individual events right now
-			
-			/*
-			  if(!evtToLog.justMyself || curEvtType == SimulatedEvent.SimEvtType.BACKOFF_DONE
-			  || curEvtType == SimulatedEvent.SimEvtType.PACKET_READY || curEvtType == 
-			  SimulatedEvent.SimEvtType.PACKET_ABORTED)
-			  {
-			  curLogger.CreateNewEvent(
-			  newExperimentID,
-			  evtToLog.TimeStart,
-			  evtToLog.TimeDuration,
-			  curEvtType.name(),
-			  evtToLog.hostCreated,
-			  (evtToLog.justMyself ? 1 : 0)
-			  );
-			  }
-			*/
-			
-			//curEvtCount++;
-			
-			
-			
-			
-			
-			// if we have passed the minimum threshold for beginning to record statistics, and we have not called
-			//    hosts.StartMeasuring yet, then do so
-			if(!beganMeasuring && stime.getCurrentTime() > MIN_MEASUREMENT_TIME)
-			    {
-				// schedule initialization events in the indices that are still active
-				for(int m = 0; m < hostIndices.size(); m++)
-				    {
-					Host hostToStartMeasure = hostList.get(hostIndices.get(m));
-					
-					hostToStartMeasure.StartMeasuring();
-				    }
-				
-				beganMeasuring = true;
-			    }
+			simRun.setTraceFile(SimulationRun.TraceFileFor(TRACE_DIR, newExperimentID, activeHosts, packSizeForThisExperiment, numTrial),
+					    newExperimentID);
 		    }
-		
-		
-		
-		// afterwards, get all of the values for collision periods and slots
-		int totalBitsSent = 0;
-		int totalPacketsSent = 0;
-		
-		double avgTransDelayNumerator = 0;
 
+		RunResult result = simRun.run();
 
-		ArrayList<Double> throughputs = new ArrayList<Double>();
-
-		for(Host h : hostList)
+		for(Host h : simRun.getHosts())
 		    {
 			System.out.println("Host " + h.hostId + ": AvgSlotVal = " + h.reportAverageWaitSlots() +
 					   "; NumCollisionPeriods = " + h.reportTotalCollisionPeriods() + "; Sent " + 
 					   h.reportTotalPacketsSent() + " packets; Dropped " + h.reportTotalPacketsDropped() 
 					   + " packets;");
-			
-			totalBitsSent += h.reportTotalBitsSent();
-			totalPacketsSent += h.reportTotalPacketsSent();
-
-			// to keep the squared numbers manageable, lets divide by some amount, all that matters is their
-			//    ratio in the end anyways. Let's say bits / millisecond.
-			throughputs.add(new Double(h.reportTotalBitsSent() / 1000));
-
-			// if this host was active, sum its transmission delay for division later
-			if(h.reportTotalPacketsSent() > 0)
-			    {
-				avgTransDelayNumerator += h.reportAverageTransDelay();
-			    }
 		    }
 
-		double fairnessIndex = CalculateFairness(throughputs);
+		System.out.println("Bits of packet data sent:" + result.totalBitsSent + "; Total bit times: " + result.experimentDuration);
 
-		double avgTransDelay = avgTransDelayNumerator / activeHosts;
+		System.out.println("Average transmission delay: " + result.avgTransDelay + "; Fairness Index: " + result.fairnessIndex);
 
-		double experimentDuration = stime.getCurrentTime() - MIN_MEASUREMENT_TIME;
-		
-		System.out.println("Bits of packet data sent:" + totalBitsSent + "; Total bit times: " + experimentDuration);
+		System.out.println("Transmission delay: " + result.delayDistribution);
 
-		System.out.println("Average transmission delay: " + avgTransDelay + "; Fairness Index: " + fairnessIndex);
+		System.out.println("Backoff slots: " + result.backoffDistribution);
 
 
-		curLogger.CreateNewExperimentSummary(newExperimentID, activeHosts, packSizeForThisExperiment, totalPacketsSent, totalBitsSent, experimentDuration, avgTransDelay, fairnessIndex);
+		RecordResult(curLogger, newExperimentID, result);
 		
 	    }
 	else
@@ -326,6 +271,39 @@ public class Initializer
     }
     
 
+    // experiment_summary row for the run, and the distributions that go with
+    // it; false if none of it could be recorded
+    public static boolean RecordResult(SQLiteLogger curLogger, int newExperimentID, RunResult result)
+    {
+	return curLogger.CreateNewRunRecord(newExperimentID, result);
+    }
+
+    public static void RunSweep(int threads, SQLiteLogger curLogger, int newExperimentID)
+    {
+	if(newExperimentID <= 0)
+	    {
+		System.out.println("Database unavailable, quitting.");
+
+		logger.info("Unable to create new Experiment row in database, ID returned:" + newExperimentID);
+
+		return;
+	    }
+
+	ArrayList<Integer> hostCounts = new ArrayList<Integer>();
+
+	for(int activeHosts = MIN_SWEEP_HOSTS; activeHosts <= BASE_CONFIG.numHosts; activeHosts++)
+	    {
+		hostCounts.add(activeHosts);
+	    }
+
+	SweepRunner sweep = new SweepRunner(BASE_CONFIG, threads);
+
+	sweep.setEventLog(eventSink);
+	sweep.setTraceDir(TRACE_DIR);
+
+	sweep.run(hostCounts, PACKET_SIZE_LIST, NUM_TRIALS_PER_CONFIG, curLogger, newExperimentID);
+    }
+
     public static double CalculateFairness(ArrayList<Double> throughputs)
     {
 	double numerator = 0;
@@ -0,0 +1,218 @@
+/*
+ * ReplicatedRun :
+ *      Several trials of one configuration run together on a ReplicatedTime.
+ *      Each trial is set up, cut into warm-up, measurement and batches, and
+ *      summarized just as a SimulationRun would do it, and gives the very same
+ *      RunResult; only the engine underneath is shared.  Replicas always run
+ *      on the sequential engine and none of their events are logged or traced.
+ */
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+
+import Ethernet.*;
+
+public class ReplicatedRun implements SimMetrics.Source
+{
+    static Logger logger = Logger.getLogger(ReplicatedRun.class);
+
+    private SimConfig[] configs;
+    private int activeHosts;
+    private int packetSize;
+    private int[] trials;
+
+    private ReplicatedTime time;
+
+    // every replica's hosts, and the ids of the ones transmitting
+    private ArrayList<ArrayList<Host>> hostLists = new ArrayList<ArrayList<Host>>();
+    private ArrayList<ArrayList<Integer>> hostIndices = new ArrayList<ArrayList<Integer>>();
+
+    // one replica for each trial, each with a copy of config
+    public ReplicatedRun(SimConfig config, int activeHosts, int packetSize, int[] trials)
+    {
+	this.activeHosts = activeHosts;
+	this.packetSize = packetSize;
+	this.trials = trials.clone();
+
+	configs = new SimConfig[trials.length];
+
+	for(int i = 0; i < trials.length; i++)
+	    {
+		configs[i] = config.copy();
+		configs[i].trial = trials[i];
+	    }
+    }
+
+    public ReplicatedTime getReplicatedTime()
+    {
+	return time;
+    }
+
+    // one RunResult per trial, in the order the trials were given
+    public RunResult[] run()
+    {
+	long wallStart = System.currentTimeMillis();
+	long cpuStart = SimulationRun.ThreadCpuNanos();
+
+	if(time == null)
+	    {
+		setUp();
+	    }
+
+	if(configs[0].parallel)
+	    {
+		logger.warn("Replicated runs use the sequential engine; " + trials.length + " trials run on one thread");
+	    }
+
+	int replicas = time.getNumReplicas();
+
+	SimConfig config = configs[0];
+	ConvergenceMonitor[] monitors = new ConvergenceMonitor[replicas];
+	double[] measuredUntil = new double[replicas];
+	boolean[] converged = new boolean[replicas];
+
+	SimMetrics metrics = SimMetrics.getInstance();
+
+	if(metrics != null)
+	    {
+		metrics.register(this);
+	    }
+
+	try
+	    {
+		// everything up to and including minMeasurementTime is warm-up
+		time.advanceTo(Math.nextUp(config.minMeasurementTime));
+
+		for(int i = 0; i < replicas; i++)
+		    {
+			ArrayList<Host> hostList = hostLists.get(i);
+
+			for(int m : hostIndices.get(i))
+			    {
+				hostList.get(m).StartMeasuring();
+			    }
+
+			// batch means are only kept when the run may stop early
+			if(config.targetPrecision > 0)
+			    {
+				monitors[i] = new ConvergenceMonitor(configs[i], hostList);
+				monitors[i].start(config.minMeasurementTime);
+			    }
+
+			measuredUntil[i] = config.maxExperimentTime;
+		    }
+
+		// then on to maxExperimentTime, every replica still estimating
+		//    stopping at its batch ends, and retiring once it has converged
+		while(true)
+		    {
+			double until = config.maxExperimentTime;
+
+			for(int i = 0; i < replicas; i++)
+			    {
+				if(monitors[i] != null && !time.isRetired(i))
+				    {
+					until = Math.min(until, monitors[i].getNextBatchEnd());
+				    }
+			    }
+
+			time.advanceTo(until);
+
+			if(until >= config.maxExperimentTime)
+			    {
+				break;
+			    }
+
+			for(int i = 0; i < replicas; i++)
+			    {
+				if(monitors[i] != null && !time.isRetired(i) && monitors[i].getNextBatchEnd() <= until
+				   && monitors[i].endBatch(until))
+				    {
+					converged[i] = true;
+					measuredUntil[i] = until;
+
+					time.retire(i);
+				    }
+			    }
+		    }
+	    }
+	finally
+	    {
+		if(metrics != null)
+		    {
+			metrics.unregister(this);
+		    }
+	    }
+
+	long wallMillis = System.currentTimeMillis() - wallStart;
+	long cpuMillis = (cpuStart < 0) ? -1 : (SimulationRun.ThreadCpuNanos() - cpuStart) / 1000000;
+	RunResult[] results = new RunResult[replicas];
+
+	for(int i = 0; i < replicas; i++)
+	    {
+		results[i] = SimulationRun.Summarize(configs[i], hostLists.get(i), activeHosts, packetSize, trials[i],
+						     measuredUntil[i]);
+
+		if(monitors[i] != null)
+		    {
+			results[i].batches = monitors[i].getBatches();
+			results[i].converged = converged[i];
+		    }
+
+		// the replicas share the wall clock and CPU time evenly
+		results[i].wallMillis = wallMillis / replicas;
+		results[i].cpuMillis = (cpuMillis < 0) ? -1 : cpuMillis / replicas;
+	    }
+
+	return results;
+    }
+
+    // SimMetrics.Source, summed over the replicas
+
+    public long getEventsRun()
+    {
+	return (time != null) ? time.getEventsRun() : 0;
+    }
+
+    public int getQueueSize()
+    {
+	return (time != null) ? time.GetTimelineSize() : 0;
+    }
+
+    public double getSimulatedNow()
+    {
+	return (time != null) ? time.getCurrentTime() : 0;
+    }
+
+    public long getCollisions()
+    {
+	long collisions = 0;
+
+	for(ArrayList<Host> hostList : hostLists)
+	    {
+		for(Host h : hostList)
+		    {
+			collisions += h.reportCollisionsSinceStart();
+		    }
+	    }
+
+	return collisions;
+    }
+
+    private void setUp()
+    {
+	time = new ReplicatedTime(configs);
+
+	for(int i = 0; i < time.getNumReplicas(); i++)
+	    {
+		ArrayList<Host> hostList = new ArrayList<Host>();
+		ArrayList<Integer> indices = new ArrayList<Integer>();
+
+		SimulationRun.PopulateHosts(time.getReplica(i), packetSize, activeHosts, hostList, indices);
+
+		hostLists.add(hostList);
+		hostIndices.add(indices);
+	    }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * ReportGenerator :
+ *      Writes the reports that used to be put together by hand from the
+ *      experiment_summary table.  For each experiment it writes
+ *
+ *          experiment-<id>.html    throughput, delay and fairness tables, active
+ *                                  hosts down the side and packet sizes across,
+ *                                  each cell the mean over the trials
+ *          experiment-<id>.csv     one line per run, for plotting
+ *
+ *      plus an index.html linking them.  Rows are streamed through a
+ *      SummaryCursor and written as they arrive, so the size of the database
+ *      makes no difference to the memory it takes.
+ *
+ *      java ReportGenerator <database file> <output dir> [experiment id]...
+ */
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class ReportGenerator
+{
+    static Logger logger = Logger.getLogger(ReportGenerator.class);
+
+    // one table per metric in each experiment's page
+    private static final int THROUGHPUT = 0;
+    private static final int DELAY = 1;
+    private static final int FAIRNESS = 2;
+
+    private static final String[] METRIC_TITLES = { "Throughput (Mbit/s)", "Average transmission delay (ms)", "Fairness index" };
+
+    private static final String NL = System.getProperty("line.separator");
+
+    private SQLiteLogger db;
+    private File outDir;
+
+    public ReportGenerator(SQLiteLogger db, File outDir)
+    {
+	this.db = db;
+	this.outDir = outDir;
+    }
+
+    public static void main(String[] args)
+    {
+	if(args.length < 2)
+	    {
+		System.out.println("usage: ReportGenerator <database file> <output dir> [experiment id]...");
+		return;
+	    }
+
+	SQLiteLogger db = new SQLiteLogger(args[0]);
+
+	try
+	    {
+		File outDir = new File(args[1]);
+
+		if(!outDir.isDirectory() && !outDir.mkdirs())
+		    {
+			throw new IOException("Unable to create " + outDir);
+		    }
+
+		List<Integer> expIDs = new ArrayList<Integer>();
+
+		for(int i = 2; i < args.length; i++)
+		    {
+			expIDs.add(Integer.parseInt(args[i]));
+		    }
+
+		if(expIDs.isEmpty())
+		    {
+			expIDs = db.LoadSummarizedExperiments();
+		    }
+
+		long runs = new ReportGenerator(db, outDir).write(expIDs);
+
+		System.out.println("Reported " + runs + " runs of " + expIDs.size() + " experiments in " + outDir);
+	    }
+	catch(IOException e)
+	    {
+		logger.error(e.getMessage());
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+	finally
+	    {
+		db.close();
+	    }
+    }
+
+    // writes every experiment's page and series, and the index; returns the runs reported
+    public long write(List<Integer> expIDs) throws IOException, SQLException
+    {
+	Writer index = open("index.html");
+	long total = 0;
+
+	try
+	    {
+		index.write("<html>" + NL + "<body>" + NL + "<table>" + NL
+			    + "<tr><th>experiment</th><th>seed</th><th>runs</th><th>series</th></tr>" + NL);
+
+		for(int expID : expIDs)
+		    {
+			long runs = writeExperiment(expID);
+
+			index.write("<tr><td><a href=\"experiment-" + expID + ".html\">" + expID + "</a></td><td>"
+				    + db.getExperimentSeed(expID) + "</td><td>" + runs + "</td><td><a href=\"experiment-"
+				    + expID + ".csv\">csv</a></td></tr>" + NL);
+
+			total += runs;
+		    }
+
+		index.write("</table>" + NL + "</body>" + NL + "</html>" + NL);
+	    }
+	finally
+	    {
+		index.close();
+	    }
+
+	return total;
+    }
+
+    // one experiment's CSV series and page, one pass over its rows for each
+    public long writeExperiment(int expID) throws IOException, SQLException
+    {
+	long runs = writeSeries(expID);
+
+	List<Integer> packetSizes = db.LoadPacketSizes(expID);
+	Writer page = open("experiment-" + expID + ".html");
+
+	try
+	    {
+		page.write("<html>" + NL + "<body>" + NL + "<h1>Experiment " + expID + "</h1>" + NL
+			   + "<p>" + runs + " runs, seed " + db.getExperimentSeed(expID) + "</p>" + NL);
+
+		for(int metric = THROUGHPUT; metric <= FAIRNESS; metric++)
+		    {
+			writeTable(page, expID, metric, packetSizes);
+		    }
+
+		page.write("</body>" + NL + "</html>" + NL);
+	    }
+	finally
+	    {
+		page.close();
+	    }
+
+	logger.info("Experiment " + expID + ": " + runs + " runs reported");
+
+	return runs;
+    }
+
+    private long writeSeries(int expID) throws IOException, SQLException
+    {
+	Writer csv = open("experiment-" + expID + ".csv");
+	SummaryCursor rows = db.OpenSummaryCursor(expID);
+	long runs = 0;
+
+	try
+	    {
+		csv.write("active_hosts,packet_size,trial,packets_sent,bits_sent,bit_times,throughput_mbps,avg_delay_ms,fairness_index" + NL);
+
+		while(rows.next())
+		    {
+			csv.write(rows.getActiveHosts() + "," + rows.getPacketSize() + "," + rows.getTrial() + ","
+				  + rows.getPacketsSent() + "," + rows.getBitsSent() + "," + rows.getDuration() + ","
+				  + format(rows.getThroughput()) + "," + format(rows.getDelayMillis()) + ","
+				  + format(rows.getFairnessIndex()) + NL);
+
+			runs++;
+		    }
+	    }
+	finally
+	    {
+		rows.close();
+		csv.close();
+	    }
+
+	return runs;
+    }
+
+    // Active hosts down the side, packet sizes across.  Rows come in (active
+    // hosts, packet size, trial) order, so a cell is done as soon as the
+    // packet size or host count changes and a table row as soon as the host
+    // count does; configurations that were never run are left blank.
+    private void writeTable(Writer page, int expID, int metric, List<Integer> packetSizes) throws IOException, SQLException
+    {
+	page.write("<h2>" + METRIC_TITLES[metric] + "</h2>" + NL + "<table>" + NL + "<tr><th>active hosts</th>");
+
+	for(int size : packetSizes)
+	    {
+		page.write("<th>" + size + " bytes</th>");
+	    }
+
+	page.write("</tr>" + NL);
+
+	SummaryCursor rows = db.OpenSummaryCursor(expID);
+
+	int hosts = -1;
+	int size = -1;
+	int column = 0;
+	double sum = 0;
+	int trials = 0;
+
+	try
+	    {
+		while(rows.next())
+		    {
+			if(rows.getActiveHosts() != hosts || rows.getPacketSize() != size)
+			    {
+				column = endCell(page, packetSizes, column, size, sum, trials);
+				sum = 0;
+				trials = 0;
+			    }
+
+			if(rows.getActiveHosts() != hosts)
+			    {
+				if(hosts >= 0)
+				    {
+					endRow(page, packetSizes, column);
+				    }
+
+				hosts = rows.getActiveHosts();
+				column = 0;
+
+				page.write("<tr><td>" + hosts + "</td>");
+			    }
+
+			size = rows.getPacketSize();
+			sum += value(rows, metric);
+			trials++;
+		    }
+
+		if(hosts >= 0)
+		    {
+			column = endCell(page, packetSizes, column, size, sum, trials);
+			endRow(page, packetSizes, column);
+		    }
+	    }
+	finally
+	    {
+		rows.close();
+	    }
+
+	page.write("</table>" + NL);
+    }
+
+    // writes the finished cell for size, after blanks for any sizes skipped
+    private int endCell(Writer page, List<Integer> packetSizes, int column, int size, double sum, int trials) throws IOException
+    {
+	if(trials == 0)
+	    {
+		return column;
+	    }
+
+	while(packetSizes.get(column) < size)
+	    {
+		page.write("<td></td>");
+		column++;
+	    }
+
+	page.write("<td>" + format(sum / trials) + "</td>");
+
+	return column + 1;
+    }
+
+    private void endRow(Writer page, List<Integer> packetSizes, int column) throws IOException
+    {
+	for(; column < packetSizes.size(); column++)
+	    {
+		page.write("<td></td>");
+	    }
+
+	page.write("</tr>" + NL);
+    }
+
+    private static double value(SummaryCursor rows, int metric)
+    {
+	switch(metric)
+	    {
+	    case THROUGHPUT:
+		return rows.getThroughput();
+	    case DELAY:
+		return rows.getDelayMillis();
+	    default:
+		return rows.getFairnessIndex();
+	    }
+    }
+
+    private static String format(double value)
+    {
+	return String.format(Locale.US, "%.4f", value);
+    }
+
+    private Writer open(String name) throws IOException
+    {
+	return new BufferedWriter(new FileWriter(new File(outDir, name)));
+    }
+}
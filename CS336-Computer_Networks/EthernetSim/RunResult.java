@@ -0,0 +1,55 @@
+/*
+ * RunResult :
+ *      The numbers one SimulationRun boils down to, i.e. one row of
+ *      experiment_summary and its experiment_distribution rows, plus how long
+ *      the run took on the wall clock.
+ */
+
+import Ethernet.*;
+
+public class RunResult
+{
+    // experiment_distribution.metric for the two distributions
+    public static final String DELAY_METRIC = "transmission_delay";
+    public static final String BACKOFF_METRIC = "backoff_slots";
+
+    public int activeHosts;
+    public int packetSize;
+    public int trial;
+    public long seed;
+
+    public int totalPacketsSent;
+    public int totalBitsSent;
+    public double experimentDuration;
+    public double avgTransDelay;
+    public double fairnessIndex;
+
+    // every active host's samples merged together
+    public LogLinearHistogram delayDistribution = new LogLinearHistogram();
+    public LogLinearHistogram backoffDistribution = new LogLinearHistogram();
+
+    // batches the run was measured in, and whether it stopped because the
+    // estimates converged rather than at maxExperimentTime
+    public int batches;
+    public boolean converged;
+
+    public long wallMillis;
+
+    // CPU time the run used over all of its threads, or -1 where the JVM
+    // cannot measure it
+    public long cpuMillis;
+
+    // identifies a run within its experiment, see SQLiteLogger.LoadCompletedRuns
+    public static String Key(int activeHosts, int packetSize, int trial)
+    {
+	return activeHosts + "/" + packetSize + "/" + trial;
+    }
+
+    public String toString()
+    {
+	return activeHosts + " hosts, " + packetSize + " byte packets, trial " + trial
+	    + ": bits sent " + totalBitsSent + " over " + experimentDuration
+	    + " bit times; avg delay " + avgTransDelay + "; fairness " + fairnessIndex
+	    + (converged ? "; converged after " + batches + " batches" : "");
+    }
+}
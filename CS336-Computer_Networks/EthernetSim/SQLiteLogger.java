@@ -1,7 +1,9 @@
 /*
  * SQLiteLogger :
  *      This class uses the SQLite database package to record with high
- *      granularity the events of the ethernet simulation
+ *      granularity the events of the ethernet simulation.  Its methods are
+ *      synchronized since an EventLogSink writes events from its own thread
+ *      while the runner records summaries.
  */
 
 //package EthernetSimulator;
@@ -11,7 +13,14 @@ import org.apache.log4j.PropertyConfigurator;
 import org.apache.log4j.RollingFileAppender;
 import org.apache.log4j.NDC;
 
+import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import Ethernet.LogLinearHistogram;
 
 public class SQLiteLogger
 {
@@ -20,6 +29,9 @@ public class SQLiteLogger
 
     private Connection dbConn;
 
+    // experiment_event inserts, prepared once and reused
+    private PreparedStatement eventStat;
+
     public SQLiteLogger(String fileLoc)
     {
 	try
@@ -33,6 +45,30 @@ public class SQLiteLogger
 		dbConn = DriverManager.getConnection("jdbc:sqlite:" + fileLoc);		
 
 		logger.info("Database is now " + (dbConn.isClosed() ? "closed" : "open"));
+
+		// a new database file starts out with the tables in dbSQL.sql
+		ensureTable("experiment", "(id INTEGER primary key, runtime INTEGER, rundatetime varchar(127), numHosts INTEGER, "
+			    + "seed INTEGER, fingerprint VARCHAR(64))");
+		ensureTable("experiment_hosts", "(host_id INTEGER primary key, experiment_id INTEGER, host_position INTEGER)");
+		ensureTable("experiment_event", "(event_id INTEGER primary key, experiment_id INTEGER, time_start REAL, "
+			    + "time_duration REAL, event_type VARCHAR(64), created_by_host_id INTEGER, is_self_event INTEGER)");
+		ensureTable("experiment_summary", "(summary_id INTEGER primary key, experiment_id INTEGER, active_hosts INTEGER, "
+			    + "packet_size INTEGER, total_packets_sent INTEGER, total_bits_sent INTEGER, "
+			    + "experiment_duration REAL, average_transmission_delay REAL, fairness_index REAL, "
+			    + "trial INTEGER)");
+
+		// older database files predate these columns, see dbSQL.sql
+		ensureColumn("experiment", "seed", "INTEGER");
+		ensureColumn("experiment", "fingerprint", "VARCHAR(64)");
+		ensureColumn("experiment_summary", "fairness_index", "REAL");
+		ensureColumn("experiment_summary", "trial", "INTEGER");
+
+		// lets SummaryCursor and resuming sweeps read an experiment's runs in order without sorting
+		ensureIndex("experiment_summary_config", "experiment_summary (experiment_id, active_hosts, packet_size, trial)");
+		ensureTable("experiment_distribution", "(distribution_id INTEGER primary key, experiment_id INTEGER, "
+			    + "active_hosts INTEGER, packet_size INTEGER, trial INTEGER, metric VARCHAR(32), "
+			    + "samples INTEGER, mean REAL, std_dev REAL, min REAL, p50 REAL, p90 REAL, p99 REAL, "
+			    + "max REAL, histogram BLOB)");
 	    }
 	catch(SQLException e)
 	    {
@@ -44,11 +80,11 @@ public class SQLiteLogger
 	    }
     }
 
-    public void CreateNewEvent(int curExpID, double timeStart, double timeDuration, String evtType, int hostID, int isSelfEvt)
+    public synchronized void CreateNewEvent(int curExpID, double timeStart, double timeDuration, String evtType, int hostID, int isSelfEvt)
     {
 	try
 	    {
-		PreparedStatement prepStat = dbConn.prepareStatement("INSERT INTO experiment_event VALUES (NULL, ?, ?, ?, ?, ?, ?)");
+		PreparedStatement prepStat = getEventStatement();
 
 		prepStat.setInt(1, curExpID);
 		prepStat.setDouble(2, timeStart);
@@ -57,8 +93,6 @@ public class SQLiteLogger
 		prepStat.setInt(5, hostID);
 		prepStat.setInt(6, isSelfEvt);
 
-		logger.info("creating new event");
-
 		prepStat.executeUpdate();
 	    }
 	catch(SQLException e)
@@ -67,7 +101,72 @@ public class SQLiteLogger
 	    }
     }
 
-    public void CreateNewHost(int curExpID, int curHostPos)
+    // writes a whole batch of events in one transaction; false if it was rolled back
+    public synchronized boolean CreateNewEvents(EventBatch batch)
+    {
+	try
+	    {
+		PreparedStatement prepStat = getEventStatement();
+
+		dbConn.setAutoCommit(false);
+
+		for(int i = 0; i < batch.count; i++)
+		    {
+			prepStat.setInt(1, batch.experimentID);
+			prepStat.setDouble(2, batch.timeStart[i]);
+			prepStat.setDouble(3, batch.timeDuration[i]);
+			prepStat.setString(4, batch.evtType[i].name());
+			prepStat.setInt(5, batch.hostID[i]);
+			prepStat.setInt(6, batch.isSelfEvt[i] ? 1 : 0);
+
+			prepStat.addBatch();
+		    }
+
+		prepStat.executeBatch();
+
+		dbConn.commit();
+
+		return true;
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+
+		try
+		    {
+			dbConn.rollback();
+		    }
+		catch(SQLException rollbacke)
+		    {
+			logger.error(rollbacke.getMessage());
+		    }
+
+		return false;
+	    }
+	finally
+	    {
+		try
+		    {
+			dbConn.setAutoCommit(true);
+		    }
+		catch(SQLException e)
+		    {
+			logger.error(e.getMessage());
+		    }
+	    }
+    }
+
+    private PreparedStatement getEventStatement() throws SQLException
+    {
+	if(eventStat == null)
+	    {
+		eventStat = dbConn.prepareStatement("INSERT INTO experiment_event VALUES (NULL, ?, ?, ?, ?, ?, ?)");
+	    }
+
+	return eventStat;
+    }
+
+    public synchronized void CreateNewHost(int curExpID, int curHostPos)
     {
 	try
 	    {
@@ -86,17 +185,28 @@ public class SQLiteLogger
 	    }
     }
 
-    public int CreateNewExperiment(long curUnixTime, String curRunDateTime, int numHosts)
+    public synchronized int CreateNewExperiment(long curUnixTime, String curRunDateTime, int numHosts, long seed)
+    {
+	return CreateNewExperiment(curUnixTime, curRunDateTime, numHosts, seed, null);
+    }
+
+    // fingerprint identifies the settings the experiment's runs are made
+    // under, see SweepSpec.getFingerprint; null when nothing will resume it
+    public synchronized int CreateNewExperiment(long curUnixTime, String curRunDateTime, int numHosts, long seed,
+						String fingerprint)
     {
 	try
 	    {
-		PreparedStatement prepStat = dbConn.prepareStatement("INSERT INTO experiment VALUES (NULL, ?, ?, ?)");
+		PreparedStatement prepStat = dbConn.prepareStatement("INSERT INTO experiment (runtime, rundatetime, numHosts, seed, fingerprint) "
+								     + "VALUES (?, ?, ?, ?, ?)");
 
 		Long converter = new Long(curUnixTime);
 
 		prepStat.setInt(1, converter.intValue());
 		prepStat.setString(2, curRunDateTime);
 		prepStat.setInt(3, numHosts);
+		prepStat.setLong(4, seed);
+		prepStat.setString(5, fingerprint);
 
 		logger.info("creating new experiment");
 
@@ -118,36 +228,441 @@ public class SQLiteLogger
 	    }
     }
 
-    public void CreateNewExperimentSummary(int expID, int activeHosts, int packSize, int packetsSent, int totalBitsSent,
-					   double experimentDuration, double avgTransDelay, double fairnessInd)
+    public synchronized void CreateNewExperimentSummary(int expID, int activeHosts, int packSize, int packetsSent, int totalBitsSent,
+					   double experimentDuration, double avgTransDelay, double fairnessInd, int trial)
+    {
+	try
+	    {
+		insertSummary(expID, activeHosts, packSize, packetsSent, totalBitsSent, experimentDuration, avgTransDelay,
+			      fairnessInd, trial);
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+	catch(Exception generice)
+	    {
+		logger.error(generice.getMessage());
+	    }
+    }
+
+    private void insertSummary(int expID, int activeHosts, int packSize, int packetsSent, int totalBitsSent,
+			       double experimentDuration, double avgTransDelay, double fairnessInd, int trial) throws SQLException
+    {
+	PreparedStatement prepStat = dbConn.prepareStatement("INSERT INTO experiment_summary (experiment_id, active_hosts, packet_size, "
+							     + "total_packets_sent, total_bits_sent, experiment_duration, "
+							     + "average_transmission_delay, fairness_index, trial) "
+							     + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+	prepStat.setInt(1, expID);
+	prepStat.setInt(2, activeHosts);
+	prepStat.setInt(3, packSize);
+	prepStat.setInt(4, packetsSent);
+	prepStat.setInt(5, totalBitsSent);
+	prepStat.setDouble(6, experimentDuration);
+	prepStat.setDouble(7, avgTransDelay);
+	prepStat.setDouble(8, fairnessInd);
+	prepStat.setInt(9, trial);
+
+	prepStat.executeUpdate();
+
+	prepStat.close();
+    }
+
+
+    // one distribution of a run next to its experiment_summary row; the
+    // histogram column holds the whole thing so trials can be merged later
+    public synchronized void CreateNewExperimentDistribution(int expID, int activeHosts, int packSize, int trial,
+							     String metric, LogLinearHistogram dist)
+    {
+	try
+	    {
+		insertDistribution(expID, activeHosts, packSize, trial, metric, dist);
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+    }
+
+    private void insertDistribution(int expID, int activeHosts, int packSize, int trial, String metric,
+				    LogLinearHistogram dist) throws SQLException
+    {
+	PreparedStatement prepStat = dbConn.prepareStatement("INSERT INTO experiment_distribution (experiment_id, active_hosts, "
+							     + "packet_size, trial, metric, samples, mean, std_dev, min, "
+							     + "p50, p90, p99, max, histogram) "
+							     + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+	prepStat.setInt(1, expID);
+	prepStat.setInt(2, activeHosts);
+	prepStat.setInt(3, packSize);
+	prepStat.setInt(4, trial);
+	prepStat.setString(5, metric);
+	prepStat.setLong(6, dist.getCount());
+	prepStat.setDouble(7, dist.getMean());
+	prepStat.setDouble(8, dist.getStdDev());
+	prepStat.setDouble(9, dist.getMin());
+	prepStat.setDouble(10, dist.getPercentile(50));
+	prepStat.setDouble(11, dist.getPercentile(90));
+	prepStat.setDouble(12, dist.getPercentile(99));
+	prepStat.setDouble(13, dist.getMax());
+	prepStat.setBytes(14, dist.toBytes());
+
+	prepStat.executeUpdate();
+
+	prepStat.close();
+    }
+
+    // A finished run's distributions and experiment_summary row in one
+    // transaction, so a run is either recorded in full or not at all; false
+    // if it was rolled back.
+    public synchronized boolean CreateNewRunRecord(int expID, RunResult result)
     {
 	try
 	    {
-		PreparedStatement prepStat = dbConn.prepareStatement("INSERT INTO experiment_summary VALUES (NULL, ?, ?, ?, ?, ?, ?, ?, ?)");
+		dbConn.setAutoCommit(false);
+
+		insertDistribution(expID, result.activeHosts, result.packetSize, result.trial, RunResult.DELAY_METRIC,
+				   result.delayDistribution);
+		insertDistribution(expID, result.activeHosts, result.packetSize, result.trial, RunResult.BACKOFF_METRIC,
+				   result.backoffDistribution);
+		insertSummary(expID, result.activeHosts, result.packetSize, result.totalPacketsSent, result.totalBitsSent,
+			      result.experimentDuration, result.avgTransDelay, result.fairnessIndex, result.trial);
+
+		dbConn.commit();
+
+		return true;
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+
+		try
+		    {
+			dbConn.rollback();
+		    }
+		catch(SQLException rollbacke)
+		    {
+			logger.error(rollbacke.getMessage());
+		    }
+
+		return false;
+	    }
+	finally
+	    {
+		try
+		    {
+			dbConn.setAutoCommit(true);
+		    }
+		catch(SQLException e)
+		    {
+			logger.error(e.getMessage());
+		    }
+	    }
+    }
+
+    // the (active hosts, packet size, trial) runs of an experiment that already
+    // have an experiment_summary row, as RunResult.Key strings
+    public synchronized Set<String> LoadCompletedRuns(int expID)
+    {
+	Set<String> completed = new HashSet<String>();
+
+	try
+	    {
+		PreparedStatement prepStat = dbConn.prepareStatement("SELECT active_hosts, packet_size, trial FROM experiment_summary "
+								     + "WHERE experiment_id = ? AND trial IS NOT NULL");
+
+		prepStat.setInt(1, expID);
+
+		ResultSet runRS = prepStat.executeQuery();
+
+		while(runRS.next())
+		    {
+			completed.add(RunResult.Key(runRS.getInt(1), runRS.getInt(2), runRS.getInt(3)));
+		    }
+
+		runRS.close();
+		prepStat.close();
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+
+	return completed;
+    }
+
+    // every experiment that has at least one experiment_summary row, in order
+    public synchronized List<Integer> LoadSummarizedExperiments()
+    {
+	List<Integer> expIDs = new ArrayList<Integer>();
+
+	try
+	    {
+		Statement queryStat = dbConn.createStatement();
+
+		ResultSet idRS = queryStat.executeQuery("SELECT DISTINCT experiment_id FROM experiment_summary ORDER BY experiment_id;");
+
+		while(idRS.next())
+		    {
+			expIDs.add(idRS.getInt(1));
+		    }
+
+		idRS.close();
+		queryStat.close();
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+
+	return expIDs;
+    }
+
+    // the packet sizes an experiment's runs cover, smallest first
+    public synchronized List<Integer> LoadPacketSizes(int expID)
+    {
+	List<Integer> sizes = new ArrayList<Integer>();
+
+	try
+	    {
+		PreparedStatement prepStat = dbConn.prepareStatement("SELECT DISTINCT packet_size FROM experiment_summary "
+								     + "WHERE experiment_id = ? ORDER BY packet_size");
+
+		prepStat.setInt(1, expID);
+
+		ResultSet sizeRS = prepStat.executeQuery();
+
+		while(sizeRS.next())
+		    {
+			sizes.add(sizeRS.getInt(1));
+		    }
+
+		sizeRS.close();
+		prepStat.close();
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+
+	return sizes;
+    }
+
+    // An experiment's experiment_summary rows, streamed rather than loaded;
+    // the caller closes the cursor.  Rows from before trials were numbered
+    // come back as trial 0.
+    public synchronized SummaryCursor OpenSummaryCursor(int expID) throws SQLException
+    {
+	PreparedStatement prepStat = dbConn.prepareStatement("SELECT active_hosts, packet_size, IFNULL(trial, 0), total_packets_sent, "
+							     + "total_bits_sent, experiment_duration, average_transmission_delay, "
+							     + "IFNULL(fairness_index, 0) FROM experiment_summary WHERE experiment_id = ? "
+							     + "ORDER BY active_hosts, packet_size, trial",
+							     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+	prepStat.setInt(1, expID);
+
+	return new SummaryCursor(prepStat, prepStat.executeQuery());
+    }
+
+    // The most recent experiment with this seed whose runs were made under
+    // the settings fingerprint stands for, or -1 if there is none.
+    // Experiments recorded without a fingerprint never match.
+    public synchronized int FindExperiment(long seed, String fingerprint)
+    {
+	PreparedStatement prepStat = null;
+
+	try
+	    {
+		prepStat = dbConn.prepareStatement("SELECT MAX(id) FROM experiment WHERE seed = ? AND fingerprint = ?");
+
+		prepStat.setLong(1, seed);
+		prepStat.setString(2, fingerprint);
+
+		ResultSet idRS = prepStat.executeQuery();
+
+		int expID = -1;
+
+		if(idRS.next() && idRS.getObject(1) != null)
+		    {
+			expID = idRS.getInt(1);
+		    }
+
+		idRS.close();
+
+		return expID;
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+
+		return -1;
+	    }
+	finally
+	    {
+		closeStatement(prepStat);
+	    }
+    }
+
+    // every trial's distribution of metric for one configuration, merged
+    public synchronized LogLinearHistogram LoadDistribution(int expID, int activeHosts, int packSize, String metric)
+    {
+	LogLinearHistogram merged = new LogLinearHistogram();
+	PreparedStatement prepStat = null;
+
+	try
+	    {
+		prepStat = dbConn.prepareStatement("SELECT histogram FROM experiment_distribution WHERE experiment_id = ? "
+						   + "AND active_hosts = ? AND packet_size = ? AND metric = ?");
 
 		prepStat.setInt(1, expID);
 		prepStat.setInt(2, activeHosts);
 		prepStat.setInt(3, packSize);
-		prepStat.setInt(4, packetsSent);
-		prepStat.setInt(5, totalBitsSent);
-		prepStat.setDouble(6, experimentDuration);
-		prepStat.setDouble(7, avgTransDelay);
-		prepStat.setDouble(8, fairnessInd);
+		prepStat.setString(4, metric);
 
-		prepStat.executeUpdate();
+		ResultSet distRS = prepStat.executeQuery();
+
+		while(distRS.next())
+		    {
+			merged.merge(LogLinearHistogram.fromBytes(distRS.getBytes(1)));
+		    }
+
+		distRS.close();
 	    }
 	catch(SQLException e)
 	    {
 		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
 	    }
-	catch(Exception generice)
+	catch(IOException e)
 	    {
-		logger.error(generice.getMessage());
+		logger.error("Unreadable histogram for experiment " + expID + ": " + e.getMessage());
 	    }
+	finally
+	    {
+		closeStatement(prepStat);
+	    }
+
+	return merged;
     }
 
+    // seed the experiment's runs were derived from, or 0 if it has none recorded
+    public synchronized long getExperimentSeed(int expID)
+    {
+	PreparedStatement prepStat = null;
+
+	try
+	    {
+		prepStat = dbConn.prepareStatement("SELECT seed FROM experiment WHERE id = ?");
 
-    public int getLastInsertRowID()
+		prepStat.setInt(1, expID);
+
+		ResultSet seedRS = prepStat.executeQuery();
+
+		long seed = seedRS.next() ? seedRS.getLong(1) : 0;
+
+		seedRS.close();
+
+		return seed;
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+
+		return 0;
+	    }
+	finally
+	    {
+		closeStatement(prepStat);
+	    }
+    }
+
+    // closes a statement on the way out of a query, its result set with it
+    private void closeStatement(Statement stat)
+    {
+	if(stat != null)
+	    {
+		try
+		    {
+			stat.close();
+		    }
+		catch(SQLException e)
+		    {
+			logger.error(e.getMessage());
+		    }
+	    }
+    }
+
+    private void ensureColumn(String table, String column, String type)
+    {
+	try
+	    {
+		Statement queryStat = dbConn.createStatement();
+
+		ResultSet colRS = queryStat.executeQuery("PRAGMA table_info(" + table + ");");
+
+		boolean found = false;
+		boolean tableExists = false;
+
+		while(colRS.next())
+		    {
+			tableExists = true;
+
+			if(colRS.getString("name").equalsIgnoreCase(column))
+			    {
+				found = true;
+			    }
+		    }
+
+		colRS.close();
+
+		if(tableExists && !found)
+		    {
+			logger.info("adding column " + table + "." + column);
+
+			queryStat.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type + ";");
+		    }
+
+		queryStat.close();
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+    }
+
+    private void ensureIndex(String index, String columns)
+    {
+	try
+	    {
+		Statement queryStat = dbConn.createStatement();
+
+		queryStat.executeUpdate("CREATE INDEX IF NOT EXISTS " + index + " ON " + columns + ";");
+
+		queryStat.close();
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+    }
+
+    private void ensureTable(String table, String columns)
+    {
+	try
+	    {
+		Statement queryStat = dbConn.createStatement();
+
+		queryStat.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " " + columns + ";");
+
+		queryStat.close();
+	    }
+	catch(SQLException e)
+	    {
+		logger.error(e.getMessage() + " error code: " + e.getErrorCode() + " SQL State: " + e.getSQLState());
+	    }
+    }
+
+    public synchronized int getLastInsertRowID()
     {
 	try
 	    {
@@ -185,12 +700,17 @@ public class SQLiteLogger
     
 
 
-    public void close()
+    public synchronized void close()
     {
 	try
 	    {
 		logger.info("closing database connection to " + dbLoc);
 
+		if(eventStat != null)
+		    {
+			eventStat.close();
+		    }
+
 		dbConn.close();
 	    }
 	catch(SQLException e)
@@ -0,0 +1,309 @@
+/*
+ * SimMetrics :
+ *      Live figures for long runs: events and collisions per second, pending
+ *      events, and how fast simulated time goes compared to the wall clock.
+ *      Runs only bump the plain counters they already keep (see
+ *      SimulatedTime.getEventsRun and Host.reportCollisionsSinceStart); a
+ *      timer thread reads them every period, works out the rates, publishes
+ *      them over JMX as EthernetSim:type=SimMetrics and logs a line.  The
+ *      reads race with the runs, which is fine for figures like these.
+ *
+ *      Off unless -Dethsim.metrics=<seconds between samples> is given.
+ */
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+public class SimMetrics implements SimMetricsMBean
+{
+    static Logger logger = Logger.getLogger(SimMetrics.class);
+
+    public static final String OBJECT_NAME = "EthernetSim:type=SimMetrics";
+
+    // bit times per second on a 10 Mbit/s Ethernet
+    private static final double BIT_TIMES_PER_SECOND = 1.0e7;
+
+    // what a run shows the sampler; called from the timer thread
+    public interface Source
+    {
+	public long getEventsRun();
+
+	public int getQueueSize();
+
+	// bit times simulated so far
+	public double getSimulatedNow();
+
+	public long getCollisions();
+    }
+
+    private static SimMetrics instance = null;
+
+    // a registered run and its counters as of the last sample, which only
+    // the timer thread touches
+    private static class Tracked
+    {
+	Source source;
+	volatile boolean done = false;
+
+	long events;
+	long collisions;
+	double now;
+
+	Tracked(Source source)
+	{
+	    this.source = source;
+	}
+    }
+
+    private CopyOnWriteArrayList<Tracked> tracked = new CopyOnWriteArrayList<Tracked>();
+
+    private long periodMillis;
+    private ScheduledExecutorService timer;
+    private long lastSampleNanos;
+
+    // the latest sample
+    private volatile int activeRuns;
+    private volatile long eventsTotal;
+    private volatile double eventsPerSecond;
+    private volatile int queueSize;
+    private volatile double collisionsPerSecond;
+    private volatile double simulatedToWall;
+
+    private SimMetrics(long periodMillis)
+    {
+	this.periodMillis = periodMillis;
+    }
+
+    // the running registry, or null when metrics are off
+    public static synchronized SimMetrics getInstance()
+    {
+	return instance;
+    }
+
+    // starts sampling if -Dethsim.metrics asks for it; a value that is not a
+    // number of seconds is reported and leaves metrics off
+    public static synchronized SimMetrics StartFromProperty()
+    {
+	String property = System.getProperty("ethsim.metrics", "0");
+	double seconds;
+
+	try
+	    {
+		seconds = Double.parseDouble(property);
+	    }
+	catch(NumberFormatException e)
+	    {
+		seconds = Double.NaN;
+	    }
+
+	if(Double.isNaN(seconds) || Double.isInfinite(seconds))
+	    {
+		logger.warn("ethsim.metrics=" + property + " is not a number of seconds; running without metrics");
+
+		return instance;
+	    }
+
+	if(instance == null && seconds > 0)
+	    {
+		Start((long)(seconds * 1000));
+	    }
+
+	return instance;
+    }
+
+    public static synchronized SimMetrics Start(long periodMillis)
+    {
+	if(instance != null)
+	    {
+		return instance;
+	    }
+
+	instance = new SimMetrics(periodMillis);
+
+	try
+	    {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+	    }
+	catch(Exception e)
+	    {
+		logger.warn("Metrics not published over JMX: " + e.getMessage());
+	    }
+
+	instance.lastSampleNanos = System.nanoTime();
+
+	instance.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+	    {
+		public Thread newThread(Runnable r)
+		{
+		    Thread t = new Thread(r, "sim-metrics");
+		    t.setDaemon(true);
+		    return t;
+		}
+	    });
+
+	final SimMetrics metrics = instance;
+
+	instance.timer.scheduleAtFixedRate(new Runnable()
+	    {
+		public void run()
+		{
+		    metrics.sample();
+		}
+	    }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+
+	logger.info("Sampling metrics every " + periodMillis + " ms");
+
+	return instance;
+    }
+
+    public static synchronized void Stop()
+    {
+	if(instance == null)
+	    {
+		return;
+	    }
+
+	instance.timer.shutdownNow();
+
+	try
+	    {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+	    }
+	catch(Exception e)
+	    {
+		logger.debug("Metrics were not registered: " + e.getMessage());
+	    }
+
+	instance = null;
+    }
+
+    // Called by the run's own thread before it starts; whatever it has
+    // already counted (a forked run's warm-up, say) is not counted again.
+    public void register(Source source)
+    {
+	Tracked t = new Tracked(source);
+
+	t.events = source.getEventsRun();
+	t.collisions = source.getCollisions();
+	t.now = source.getSimulatedNow();
+
+	tracked.add(t);
+    }
+
+    // The run is over; the next sample counts what it did since the last one
+    // and then lets it go.
+    public void unregister(Source source)
+    {
+	for(Tracked t : tracked)
+	    {
+		if(t.source == source)
+		    {
+			t.done = true;
+		    }
+	    }
+    }
+
+    void sample()
+    {
+	long nanos = System.nanoTime();
+	double seconds = (nanos - lastSampleNanos) / 1.0e9;
+
+	lastSampleNanos = nanos;
+
+	long events = 0;
+	long collisions = 0;
+	double simulated = 0;
+	int queue = 0;
+	int active = 0;
+
+	for(Tracked t : tracked)
+	    {
+		boolean done = t.done;
+
+		long e = t.source.getEventsRun();
+		long c = t.source.getCollisions();
+		double now = t.source.getSimulatedNow();
+
+		// a parallel run folding its segments back together can briefly
+		//    look like it went backwards
+		events += Math.max(0, e - t.events);
+		collisions += Math.max(0, c - t.collisions);
+		simulated += Math.max(0, now - t.now);
+
+		t.events = e;
+		t.collisions = c;
+		t.now = now;
+
+		if(done)
+		    {
+			tracked.remove(t);
+		    }
+		else
+		    {
+			queue += t.source.getQueueSize();
+			active++;
+		    }
+	    }
+
+	activeRuns = active;
+	eventsTotal += events;
+	queueSize = queue;
+
+	if(seconds > 0)
+	    {
+		eventsPerSecond = events / seconds;
+		collisionsPerSecond = collisions / seconds;
+		simulatedToWall = simulated / BIT_TIMES_PER_SECOND / seconds;
+	    }
+
+	if(active > 0 || events > 0)
+	    {
+		logger.info(active + " runs: " + Math.round(eventsPerSecond) + " events/s, queue " + queue + ", "
+			    + Math.round(collisionsPerSecond) + " collisions/s, simulated/wall "
+			    + String.format("%.3f", simulatedToWall));
+	    }
+    }
+
+    public int getActiveRuns()
+    {
+	return activeRuns;
+    }
+
+    public long getEventsTotal()
+    {
+	return eventsTotal;
+    }
+
+    public double getEventsPerSecond()
+    {
+	return eventsPerSecond;
+    }
+
+    public int getQueueSize()
+    {
+	return queueSize;
+    }
+
+    public double getCollisionsPerSecond()
+    {
+	return collisionsPerSecond;
+    }
+
+    public double getSimulatedToWallRatio()
+    {
+	return simulatedToWall;
+    }
+
+    public long getSamplePeriodMillis()
+    {
+	return periodMillis;
+    }
+}
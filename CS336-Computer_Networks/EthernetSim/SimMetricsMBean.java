@@ -0,0 +1,23 @@
+/*
+ * SimMetricsMBean :
+ *      What SimMetrics shows over JMX, as of its latest sample.  Rates are
+ *      per second of wall clock and summed over every run going on.
+ */
+
+public interface SimMetricsMBean
+{
+    public int getActiveRuns();
+
+    public long getEventsTotal();
+
+    public double getEventsPerSecond();
+
+    public int getQueueSize();
+
+    public double getCollisionsPerSecond();
+
+    // seconds simulated per second of wall clock
+    public double getSimulatedToWallRatio();
+
+    public long getSamplePeriodMillis();
+}
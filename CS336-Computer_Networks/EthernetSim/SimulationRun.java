@@ -0,0 +1,519 @@
+/*
+ * SimulationRun :
+ *      One configuration of the simulator.  It builds its own SimulatedTime and
+ *      hosts, runs the elapse loop and boils the hosts' counters down to a
+ *      RunResult.  Nothing in here is shared with other runs, so several can
+ *      go at once on different threads.
+ */
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+import Ethernet.*;
+
+public class SimulationRun implements SimMetrics.Source
+{
+    static Logger logger = Logger.getLogger(SimulationRun.class);
+
+    private SimConfig config;
+    private int activeHosts;
+    private int packetSize;
+    private int trial;
+
+    private SimulatedTime stime;
+
+    // set while the parallel engine has the network split up; volatile for SimMetrics
+    private volatile ParallelTime parallel = null;
+
+    // CPU time of the parallel engine's segment threads, added up as each stretch ends
+    private long segmentCpuNanos = 0;
+    private ArrayList<Host> hostList;
+    private ArrayList<Integer> hostIndices;
+
+    // where individual events go, if anywhere
+    private EventLogSink.Producer eventLog = null;
+
+    // binary trace of every event, if anywhere
+    private File traceFile = null;
+    private int traceExperimentID;
+
+    // stream key for the run's own draws, clear of the host ids
+    private static final long TOPOLOGY_STREAM = -1;
+
+    public SimulationRun(SimConfig config, int activeHosts, int packetSize, int trial)
+    {
+	this.config = config;
+	this.activeHosts = activeHosts;
+	this.packetSize = packetSize;
+	this.trial = trial;
+
+	config.trial = trial;
+    }
+
+    // A run that carries on from a warmUp() snapshot.  Fork 0 continues it
+    // exactly, as if the original had never stopped; any other fork reseeds
+    // the hosts so each fork is an independent measurement of the same
+    // stabilized network.  The fork number is reported as the trial.
+    public static SimulationRun Fork(EtherState warm, int fork) throws IOException
+    {
+	SimulatedTime restored = (fork == 0) ? warm.restore() : warm.restore(fork);
+
+	SimulationRun simRun = new SimulationRun(restored.getConfig(), warm.getActiveHosts(), warm.getPacketSize(), fork);
+
+	simRun.stime = restored;
+	simRun.hostList = new ArrayList<Host>(restored.getHosts());
+	simRun.hostIndices = new ArrayList<Integer>();
+
+	for(int i = 0; i < simRun.hostList.size(); i++)
+	    {
+		simRun.hostIndices.add(i);
+	    }
+
+	return simRun;
+    }
+
+    public void setEventLog(EventLogSink.Producer eventLog)
+    {
+	this.eventLog = eventLog;
+    }
+
+    public void setTraceFile(File traceFile, int experimentID)
+    {
+	this.traceFile = traceFile;
+	this.traceExperimentID = experimentID;
+    }
+
+    // trace-<experiment>-<active hosts>-<packet size>-<trial>.trace in the given directory
+    public static File TraceFileFor(String traceDir, int experimentID, int activeHosts, int packetSize, int trial)
+    {
+	return new File(traceDir, "trace-" + experimentID + "-" + activeHosts + "-" + packetSize + "-" + trial + ".trace");
+    }
+
+    public ArrayList<Host> getHosts()
+    {
+	return hostList;
+    }
+
+    public SimulatedTime getSimulatedTime()
+    {
+	return stime;
+    }
+
+    public RunResult run()
+    {
+	long wallStart = System.currentTimeMillis();
+	long cpuStart = ThreadCpuNanos();
+
+	if(stime == null)
+	    {
+		setUp();
+	    }
+
+	if(config.parallel && (eventLog != null || traceFile != null))
+	    {
+		logger.warn("Only the sequential engine logs and traces events; this run writes neither");
+	    }
+
+	TraceWriter trace = openTrace();
+
+	// batch means are only kept when the run may stop early
+	ConvergenceMonitor monitor = null;
+
+	if(config.targetPrecision > 0)
+	    {
+		monitor = new ConvergenceMonitor(config, hostList);
+	    }
+
+	boolean converged = false;
+	double measuredUntil = config.maxExperimentTime;
+
+	SimMetrics metrics = SimMetrics.getInstance();
+
+	if(metrics != null)
+	    {
+		metrics.register(this);
+	    }
+
+	startEngine();
+
+	try
+	    {
+		// everything up to and including minMeasurementTime is warm-up, which
+		//    a forked run has already been through
+		trace = advance(Math.nextUp(config.minMeasurementTime), trace);
+
+		startMeasuring();
+
+		if(monitor != null)
+		    {
+			monitor.start(config.minMeasurementTime);
+		    }
+
+		// then on to maxExperimentTime, stopping at each batch end along the way when estimating
+		while(true)
+		    {
+			double until = config.maxExperimentTime;
+
+			if(monitor != null)
+			    {
+				until = Math.min(until, monitor.getNextBatchEnd());
+			    }
+
+			trace = advance(until, trace);
+
+			if(until >= config.maxExperimentTime)
+			    {
+				break;
+			    }
+
+			if(monitor.endBatch(until))
+			    {
+				converged = true;
+				measuredUntil = until;
+
+				break;
+			    }
+		    }
+	    }
+	finally
+	    {
+		stopEngine();
+
+		if(metrics != null)
+		    {
+			metrics.unregister(this);
+		    }
+	    }
+
+	if(eventLog != null)
+	    {
+		eventLog.flush();
+	    }
+
+	closeTrace(trace);
+
+	RunResult result = summarize(measuredUntil);
+
+	if(monitor != null)
+	    {
+		result.batches = monitor.getBatches();
+		result.converged = converged;
+
+		logger.debug(result.activeHosts + " hosts, " + result.packetSize + " byte packets: " + monitor);
+	    }
+
+	result.wallMillis = System.currentTimeMillis() - wallStart;
+	result.cpuMillis = (cpuStart < 0 || segmentCpuNanos < 0) ? -1
+	    : (ThreadCpuNanos() - cpuStart + segmentCpuNanos) / 1000000;
+
+	return result;
+    }
+
+    // CPU time of the calling thread so far, or -1 if the JVM does not keep it
+    static long ThreadCpuNanos()
+    {
+	ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    // SimMetrics.Source: the counters the run keeps anyway, read from the
+    // metrics thread, and summed over the segments while running in parallel
+
+    public long getEventsRun()
+    {
+	ParallelTime p = parallel;
+
+	return (p != null) ? p.getEventsRun() : stime.getEventsRun();
+    }
+
+    public int getQueueSize()
+    {
+	ParallelTime p = parallel;
+
+	return (p != null) ? p.GetTimelineSize() : stime.GetTimelineSize();
+    }
+
+    public double getSimulatedNow()
+    {
+	ParallelTime p = parallel;
+
+	return (p != null) ? p.getCurrentTime() : stime.getCurrentTime();
+    }
+
+    public long getCollisions()
+    {
+	long collisions = 0;
+
+	for(Host h : hostList)
+	    {
+		collisions += h.reportCollisionsSinceStart();
+	    }
+
+	return collisions;
+    }
+
+    // Runs just the warm-up, every event up to and including
+    // minMeasurementTime, and snapshots the network there before anything
+    // has been measured.  The warm-up is not traced.
+    public EtherState warmUp() throws IOException
+    {
+	if(stime == null)
+	    {
+		setUp();
+	    }
+
+	startEngine();
+
+	try
+	    {
+		advance(Math.nextUp(config.minMeasurementTime), null);
+	    }
+	finally
+	    {
+		stopEngine();
+	    }
+
+	if(eventLog != null)
+	    {
+		eventLog.flush();
+	    }
+
+	return EtherState.capture(stime, activeHosts, packetSize);
+    }
+
+    // Runs every event before until, on one thread or one per segment.  Both
+    // engines stop at the same points and give the same results, but only the
+    // sequential one sees individual events to log and trace.
+    private TraceWriter advance(double until, TraceWriter trace)
+    {
+	if(parallel != null)
+	    {
+		parallel.advanceTo(until);
+
+		return trace;
+	    }
+
+	while(stime.nextEventTime() < until)
+	    {
+		stime.elapse();
+
+		if(eventLog != null)
+		    {
+			logEvent(stime.CurrentEvent);
+		    }
+
+		if(trace != null)
+		    {
+			trace = traceEvent(trace, stime.CurrentEvent);
+		    }
+	    }
+
+	return trace;
+    }
+
+    private void startEngine()
+    {
+	if(config.parallel)
+	    {
+		parallel = new ParallelTime(stime);
+	    }
+    }
+
+    // puts the network back together on stime after a parallel stretch
+    private void stopEngine()
+    {
+	if(parallel != null)
+	    {
+		parallel.join();
+
+		long workers = parallel.getWorkerCpuNanos();
+		segmentCpuNanos = (workers < 0 || segmentCpuNanos < 0) ? -1 : segmentCpuNanos + workers;
+
+		logger.debug(parallel.getNumSegments() + " segments took " + parallel.getWindows() + " windows");
+
+		parallel = null;
+	    }
+    }
+
+    private void startMeasuring()
+    {
+	for(int m = 0; m < hostIndices.size(); m++)
+	    {
+		hostList.get(hostIndices.get(m)).StartMeasuring();
+	    }
+    }
+
+    private TraceWriter openTrace()
+    {
+	if(traceFile == null || config.parallel)
+	    {
+		return null;
+	    }
+
+	try
+	    {
+		return new TraceWriter(traceFile, traceExperimentID, config.seed);
+	    }
+	catch(IOException e)
+	    {
+		logger.error("Unable to open trace " + traceFile + ": " + e.getMessage());
+
+		return null;
+	    }
+    }
+
+    // gives up on the trace rather than the run if the disk misbehaves
+    private TraceWriter traceEvent(TraceWriter trace, SimulatedEvent evt)
+    {
+	try
+	    {
+		trace.write(evt);
+
+		return trace;
+	    }
+	catch(IOException e)
+	    {
+		logger.error("Trace " + traceFile + " abandoned: " + e.getMessage());
+
+		closeTrace(trace);
+
+		return null;
+	    }
+    }
+
+    private void closeTrace(TraceWriter trace)
+    {
+	if(trace == null)
+	    {
+		return;
+	    }
+
+	try
+	    {
+		trace.close();
+	    }
+	catch(IOException e)
+	    {
+		logger.error("Unable to close trace " + traceFile + ": " + e.getMessage());
+	    }
+    }
+
+    // the events SimulatedEvent.isLogged picks out
+    private void logEvent(SimulatedEvent evtToLog)
+    {
+	SimulatedEvent.SimEvtType curEvtType = evtToLog.getEventType();
+
+	if(SimulatedEvent.isLogged(curEvtType, evtToLog.justMyself))
+	    {
+		eventLog.log(evtToLog.TimeStart, evtToLog.TimeDuration, curEvtType, evtToLog.hostCreated, evtToLog.justMyself);
+	    }
+    }
+
+    // number of hosts to run experiment on, 24 from paper where 0-5, 6-11, 12-17, 18-23
+    //     where on the same repeater so where 20 feet * 2 from each other, but inbetween
+    //     the groups of hosts, there were 1000 feet so you need to take the 
+    //     abs((floor(host id) / 6) - floor(other host id) / 6) * 1000 feet to find the
+    //     distance between them in feet, then its 65.62 feet / bit so divide by that
+    //     to find the number of bits between any two hosts.  A Topology in the
+    //     config replaces all of that, see Topology
+    private void setUp()
+    {
+	stime = new SimulatedTime(config);
+
+	hostList = new ArrayList<Host>();
+	hostIndices = new ArrayList<Integer>();
+
+	PopulateHosts(stime, packetSize, activeHosts, hostList, hostIndices);
+    }
+
+    // Adds every host of the topology to stime and starts the first activeHosts
+    // of them transmitting; hostList and hostIndices get all the hosts and the
+    // ids of the active ones.  ReplicatedRun sets up each replica the same way.
+    static void PopulateHosts(SimulatedTime stime, int packetSize, int activeHosts,
+			      ArrayList<Host> hostList, ArrayList<Integer> hostIndices)
+    {
+	int numHosts = stime.getTopology().getNumHosts();
+
+	for(int i = 0; i < numHosts; i++)
+	    {
+		Host hostToAdd = new Host(stime, packetSize, i);
+
+		hostList.add(hostToAdd);
+		hostIndices.add(i);
+		stime.addHost(hostToAdd);
+	    }
+
+	RandomStream r = stime.getRandomStream().derive(TOPOLOGY_STREAM);
+	boolean evenTopology = true;
+
+	if (evenTopology){
+	    // only the first activeHosts hosts transmit
+	    while(hostIndices.size() > activeHosts) {
+		hostIndices.remove(hostIndices.size() - 1);
+	    }
+	} else {
+	    // randomly remove all but activeHosts number of indices from the array containing the all of the host id's
+	    while(hostIndices.size() > activeHosts) {
+		hostIndices.remove(r.nextInt(hostIndices.size()));
+	    }
+	}
+
+	// schedule initialization events in the indices that are still active
+	for(int k = 0; k < hostIndices.size(); k++){
+	    Host hostToActivate = hostList.get(hostIndices.get(k));
+	    hostToActivate.scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, hostToActivate.RandomProcessTime(), true);
+	}
+    }
+
+    // afterwards, get all of the values for collision periods and slots
+    private RunResult summarize(double measuredUntil)
+    {
+	return Summarize(config, hostList, activeHosts, packetSize, trial, measuredUntil);
+    }
+
+    static RunResult Summarize(SimConfig config, ArrayList<Host> hostList, int activeHosts, int packetSize,
+			       int trial, double measuredUntil)
+    {
+	RunResult result = new RunResult();
+
+	result.activeHosts = activeHosts;
+	result.packetSize = packetSize;
+	result.trial = trial;
+	result.seed = config.seed;
+
+	double avgTransDelayNumerator = 0;
+
+	ArrayList<Double> throughputs = new ArrayList<Double>();
+
+	for(Host h : hostList)
+	    {
+		result.totalBitsSent += h.reportTotalBitsSent();
+		result.totalPacketsSent += h.reportTotalPacketsSent();
+
+		// to keep the squared numbers manageable, lets divide by some amount, all that matters is their
+		//    ratio in the end anyways. Let's say bits / millisecond.
+		throughputs.add(new Double(h.reportTotalBitsSent() / 1000));
+
+		// if this host was active, sum its transmission delay for division later
+		if(h.reportTotalPacketsSent() > 0)
+		    {
+			avgTransDelayNumerator += h.reportAverageTransDelay();
+		    }
+
+		result.delayDistribution.merge(h.reportDelayHistogram());
+		result.backoffDistribution.merge(h.reportBackoffHistogram());
+	    }
+
+	result.fairnessIndex = Initializer.CalculateFairness(throughputs);
+	result.avgTransDelay = avgTransDelayNumerator / activeHosts;
+	result.experimentDuration = measuredUntil - config.minMeasurementTime;
+
+	return result;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * SummaryCursor :
+ *      Walks an experiment's experiment_summary rows forward only, one row
+ *      at a time, in (active hosts, packet size, trial) order, so a report
+ *      over any number of runs holds one row in memory.  Get one from
+ *      SQLiteLogger.OpenSummaryCursor, call next() until it returns false and
+ *      read the current row with the getters.
+ *
+ *          SummaryCursor rows = db.OpenSummaryCursor(expID);
+ *          while(rows.next()) { ... rows.getThroughput() ... }
+ *          rows.close();
+ */
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class SummaryCursor
+{
+    // bit times per second on a 10 Mbit/s Ethernet
+    public static final double BIT_TIMES_PER_SECOND = 1.0e7;
+
+    private PreparedStatement stat;
+    private ResultSet rows;
+
+    // the current row
+    private int activeHosts;
+    private int packetSize;
+    private int trial;
+    private int packetsSent;
+    private long bitsSent;
+    private double duration;
+    private double avgTransDelay;
+    private double fairnessIndex;
+
+    SummaryCursor(PreparedStatement stat, ResultSet rows)
+    {
+	this.stat = stat;
+	this.rows = rows;
+    }
+
+    public boolean next() throws SQLException
+    {
+	if(!rows.next())
+	    {
+		return false;
+	    }
+
+	activeHosts = rows.getInt(1);
+	packetSize = rows.getInt(2);
+	trial = rows.getInt(3);
+	packetsSent = rows.getInt(4);
+	bitsSent = rows.getLong(5);
+	duration = rows.getDouble(6);
+	avgTransDelay = rows.getDouble(7);
+	fairnessIndex = rows.getDouble(8);
+
+	return true;
+    }
+
+    public int getActiveHosts()
+    {
+	return activeHosts;
+    }
+
+    public int getPacketSize()
+    {
+	return packetSize;
+    }
+
+    public int getTrial()
+    {
+	return trial;
+    }
+
+    public int getPacketsSent()
+    {
+	return packetsSent;
+    }
+
+    public long getBitsSent()
+    {
+	return bitsSent;
+    }
+
+    // bit times measured
+    public double getDuration()
+    {
+	return duration;
+    }
+
+    // in bit times
+    public double getAvgTransDelay()
+    {
+	return avgTransDelay;
+    }
+
+    public double getFairnessIndex()
+    {
+	return fairnessIndex;
+    }
+
+    // Mbit/s of packet data, overhead included, on a 10 Mbit/s line
+    public double getThroughput()
+    {
+	return (duration > 0) ? bitsSent / duration * BIT_TIMES_PER_SECOND / 1.0e6 : 0;
+    }
+
+    // average transmission delay in milliseconds
+    public double getDelayMillis()
+    {
+	return avgTransDelay / BIT_TIMES_PER_SECOND * 1000;
+    }
+
+    public void close() throws SQLException
+    {
+	rows.close();
+	stat.close();
+    }
+}
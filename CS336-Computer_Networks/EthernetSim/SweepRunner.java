@@ -0,0 +1,279 @@
+/*
+ * SweepRunner :
+ *      Runs every (active hosts, packet size, trial) combination of a sweep on
+ *      a fork-join pool.  Each run is a SimulationRun with its own copy of the
+ *      configuration; finished runs are collected on the calling thread, which
+ *      is the only one that ever talks to the SQLiteLogger.  Runs that are
+ *      already recorded can be left out, which is how a sweep resumes.  With
+ *      replicas set, the trials of a configuration go together a few at a time
+ *      as ReplicatedRuns instead, unless events are being logged or traced.
+ */
+
+import org.apache.log4j.Logger;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+
+import Ethernet.*;
+
+public class SweepRunner
+{
+    static Logger logger = Logger.getLogger(SweepRunner.class);
+
+    private SimConfig baseConfig;
+    private int threads;
+
+    private EventLogSink eventSink = null;
+    private String traceDir = null;
+
+    // trials of a configuration to run together on one ReplicatedTime
+    private int replicas = 1;
+
+    // RunResult.Key of every run to leave out, and where a line goes as each run finishes
+    private Set<String> completed = new HashSet<String>();
+    private PrintStream progress = System.out;
+
+    // how the last run() went
+    private int submitted;
+    private int skipped;
+    private int failed;
+
+    public SweepRunner(SimConfig baseConfig, int threads)
+    {
+	this.baseConfig = baseConfig;
+	this.threads = threads;
+    }
+
+    // every run of the sweep logs its events here when set
+    public void setEventLog(EventLogSink eventSink)
+    {
+	this.eventSink = eventSink;
+    }
+
+    // every run of the sweep writes a binary trace into this directory when set
+    public void setTraceDir(String traceDir)
+    {
+	this.traceDir = traceDir;
+    }
+
+    public void setReplicas(int replicas)
+    {
+	this.replicas = replicas;
+    }
+
+    // runs already recorded by an earlier, interrupted sweep
+    public void setCompleted(Set<String> completed)
+    {
+	this.completed = completed;
+    }
+
+    public void setProgress(PrintStream progress)
+    {
+	this.progress = progress;
+    }
+
+    public int getSubmitted()
+    {
+	return submitted;
+    }
+
+    public int getSkipped()
+    {
+	return skipped;
+    }
+
+    // runs that threw, or finished but could not be recorded
+    public int getFailed()
+    {
+	return failed;
+    }
+
+    public List<RunResult> run(List<Integer> hostCounts, List<Integer> packetSizes, int trialsPerConfig,
+			       SQLiteLogger curLogger, int experimentID)
+    {
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	CompletionService<RunResult[]> finished = new ExecutorCompletionService<RunResult[]>(pool);
+
+	long wallStart = System.currentTimeMillis();
+
+	submitted = 0;
+	skipped = 0;
+	failed = 0;
+
+	// logging and tracing only happen on a SimulationRun of its own
+	int perJob = (eventSink != null || traceDir != null) ? 1 : Math.max(1, replicas);
+
+	if(perJob < replicas)
+	    {
+		logger.warn("Replicated runs neither log nor trace events; running trials one at a time");
+	    }
+
+	int jobs = 0;
+
+	for(int activeHosts : hostCounts)
+	    {
+		for(int packSize : packetSizes)
+		    {
+			List<Integer> pending = new ArrayList<Integer>();
+
+			for(int numTrial = 0; numTrial < trialsPerConfig; numTrial++)
+			    {
+				if(completed.contains(RunResult.Key(activeHosts, packSize, numTrial)))
+				    {
+					skipped++;
+					continue;
+				    }
+
+				pending.add(numTrial);
+			    }
+
+			for(int first = 0; first < pending.size(); first += perJob)
+			    {
+				List<Integer> group = pending.subList(first, Math.min(pending.size(), first + perJob));
+
+				finished.submit((group.size() == 1) ? newRun(activeHosts, packSize, group.get(0), experimentID)
+						: newReplicatedRun(activeHosts, packSize, group));
+				submitted += group.size();
+				jobs++;
+			    }
+		    }
+	    }
+
+	logger.info("Sweep of " + submitted + " runs on " + threads + " threads"
+		    + (jobs < submitted ? " as " + jobs + " replicated jobs" : "")
+		    + (skipped > 0 ? ", " + skipped + " already recorded" : ""));
+
+	List<RunResult> results = new ArrayList<RunResult>();
+	int recorded = 0;
+	long runMillis = 0;
+	long cpuMillis = 0;
+
+	try
+	    {
+		int done = 0;
+
+		for(int job = 0; job < jobs; job++)
+		    {
+			try
+			    {
+				for(RunResult result : finished.take().get())
+				    {
+					done++;
+					results.add(result);
+					runMillis += result.wallMillis;
+					cpuMillis = (result.cpuMillis < 0 || cpuMillis < 0) ? -1 : cpuMillis + result.cpuMillis;
+
+					if(Initializer.RecordResult(curLogger, experimentID, result))
+					    {
+						recorded++;
+					    }
+					else
+					    {
+						logger.error("Unable to record " + result);
+					    }
+
+					// remaining runs at the average pace so far
+					long elapsed = System.currentTimeMillis() - wallStart;
+					long eta = elapsed * (submitted - done) / done;
+
+					progress.println("[" + done + "/" + submitted + "] " + result + "; eta " + (eta / 1000) + " s");
+				    }
+			    }
+			catch(ExecutionException e)
+			    {
+				logger.error("Run failed: " + e.getCause());
+			    }
+		    }
+	    }
+	catch(InterruptedException e)
+	    {
+		logger.error("Sweep interrupted, " + results.size() + " of " + submitted + " runs finished");
+		Thread.currentThread().interrupt();
+	    }
+	finally
+	    {
+		pool.shutdownNow();
+	    }
+
+	failed = submitted - recorded;
+
+	long wallMillis = System.currentTimeMillis() - wallStart;
+
+	// The runs' own wall times stretch while they wait for a processor, so
+	// summing them only says how many ran at once; the CPU time they used
+	// is what one thread would have needed, give or take the pool's overhead.
+	if(cpuMillis >= 0)
+	    {
+		double speedup = (wallMillis > 0) ? (double)cpuMillis / wallMillis : 0;
+
+		progress.println("Sweep finished in " + wallMillis + " ms wall clock; " + cpuMillis
+				   + " ms CPU time of simulation; speedup " + speedup + "x on " + threads + " threads");
+
+		logger.info("Sweep wall " + wallMillis + " ms, summed run CPU time " + cpuMillis + " ms, speedup " + speedup);
+	    }
+	else
+	    {
+		double parallelism = (wallMillis > 0) ? (double)runMillis / wallMillis : 0;
+
+		progress.println("Sweep finished in " + wallMillis + " ms wall clock; " + runMillis
+				   + " ms of simulation; parallelism " + parallelism + " on " + threads + " threads");
+
+		logger.info("Sweep wall " + wallMillis + " ms, summed run time " + runMillis + " ms, parallelism " + parallelism);
+	    }
+
+	return results;
+    }
+
+    private Callable<RunResult[]> newRun(final int activeHosts, final int packSize, final int numTrial, final int experimentID)
+    {
+	final SimConfig config = baseConfig.copy();
+
+	return new Callable<RunResult[]>()
+	{
+	    public RunResult[] call()
+	    {
+		SimulationRun simRun = new SimulationRun(config, activeHosts, packSize, numTrial);
+
+		if(eventSink != null)
+		    {
+			simRun.setEventLog(eventSink.newProducer(experimentID));
+		    }
+
+		if(traceDir != null)
+		    {
+			simRun.setTraceFile(SimulationRun.TraceFileFor(traceDir, experimentID, activeHosts, packSize, numTrial),
+					    experimentID);
+		    }
+
+		return new RunResult[] { simRun.run() };
+	    }
+	};
+    }
+
+    private Callable<RunResult[]> newReplicatedRun(final int activeHosts, final int packSize, List<Integer> trials)
+    {
+	final SimConfig config = baseConfig.copy();
+	final int[] numTrials = new int[trials.size()];
+
+	for(int i = 0; i < numTrials.length; i++)
+	    {
+		numTrials[i] = trials.get(i);
+	    }
+
+	return new Callable<RunResult[]>()
+	{
+	    public RunResult[] call()
+	    {
+		return new ReplicatedRun(config, activeHosts, packSize, numTrials).run();
+	    }
+	};
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * SweepSpec :
+ *      What a BatchRunner sweep covers, read from a properties file and/or
+ *      key=value arguments, the later ones winning:
+ *
+ *          hosts=2-24              transmitting host counts, a list of numbers and ranges
+ *          packets=64,128,...      packet sizes in bytes
+ *          trials=1                trials of each configuration
+ *          replicas=1              trials run together on one ReplicatedTime
+ *          seeds=1,2,3             one experiment per seed; a random one if not given
+ *          db=ESData.s3db          database file the results go to
+ *          threads=<processors>    runs at once
+ *          resume=true             carry on a recorded experiment with the same seed and
+ *                                  settings; the default once the seeds are given
+ *          topology=<file>         network layout, see Ethernet.Topology
+ *          traceDir=<dir>          write a binary trace of every run there
+ *          summary=<file>          also write the closing summary there
+ *          precision, parallel, queue, maxTime, warmUp    the SimConfig settings
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import Ethernet.*;
+
+public class SweepSpec
+{
+    private static final String[] KEYS = { "hosts", "packets", "trials", "replicas", "seeds", "db", "threads", "resume",
+					   "topology", "traceDir", "summary", "precision", "parallel", "queue", "maxTime", "warmUp" };
+
+    public List<Integer> hostCounts;
+    public List<Integer> packetSizes;
+    public int trials;
+    public int replicas;
+    public List<Long> seeds = new ArrayList<Long>();
+
+    public String dbFile;
+    public int threads;
+    public boolean resume;
+
+    public String traceDir;
+    public String summaryFile;
+
+    // every run of the sweep starts from a copy of this, seed aside
+    public SimConfig config = new SimConfig();
+
+    // args are [spec file] [key=value]...
+    public static SweepSpec Parse(String[] args) throws IOException
+    {
+	Properties props = new Properties();
+
+	for(int i = 0; i < args.length; i++)
+	    {
+		int eq = args[i].indexOf('=');
+
+		if(eq > 0)
+		    {
+			props.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+		    }
+		else if(i == 0)
+		    {
+			InputStream in = new FileInputStream(args[i]);
+
+			try
+			    {
+				props.load(in);
+			    }
+			finally
+			    {
+				in.close();
+			    }
+		    }
+		else
+		    {
+			throw new IllegalArgumentException("Expected key=value, not " + args[i]);
+		    }
+	    }
+
+	for(String key : props.stringPropertyNames())
+	    {
+		if(!isKey(key))
+		    {
+			throw new IllegalArgumentException("Unknown sweep setting " + key);
+		    }
+	    }
+
+	SweepSpec spec = new SweepSpec();
+	SimConfig config = spec.config;
+
+	if(props.getProperty("topology") != null)
+	    {
+		config.topology = Topology.load(new File(props.getProperty("topology")));
+		config.numHosts = config.topology.getNumHosts();
+	    }
+
+	config.targetPrecision = Double.parseDouble(props.getProperty("precision", String.valueOf(config.targetPrecision)));
+	config.parallel = Boolean.parseBoolean(props.getProperty("parallel", String.valueOf(config.parallel)));
+	config.queueKind = props.getProperty("queue", config.queueKind);
+	config.maxExperimentTime = Double.parseDouble(props.getProperty("maxTime", String.valueOf(config.maxExperimentTime)));
+	config.minMeasurementTime = Double.parseDouble(props.getProperty("warmUp", String.valueOf(config.minMeasurementTime)));
+
+	// fails here rather than in the first run
+	SimulatedTime.newQueue(config.queueKind);
+
+	if(config.minMeasurementTime >= config.maxExperimentTime)
+	    {
+		throw new IllegalArgumentException("warmUp has to end before maxTime");
+	    }
+
+	spec.hostCounts = ParseIntegers(props.getProperty("hosts", Initializer.MIN_SWEEP_HOSTS + "-" + config.numHosts));
+	spec.packetSizes = (props.getProperty("packets") != null) ? ParseIntegers(props.getProperty("packets"))
+	    : Initializer.PACKET_SIZE_LIST;
+	spec.trials = Integer.parseInt(props.getProperty("trials", "1"));
+	spec.replicas = Integer.parseInt(props.getProperty("replicas", "1"));
+
+	for(int h : spec.hostCounts)
+	    {
+		if(h < 1 || h > config.numHosts)
+		    {
+			throw new IllegalArgumentException("Host count " + h + " outside 1-" + config.numHosts);
+		    }
+	    }
+
+	for(int p : spec.packetSizes)
+	    {
+		if(p <= 0)
+		    {
+			throw new IllegalArgumentException("Packet size " + p + " is not positive");
+		    }
+	    }
+
+	if(spec.trials <= 0)
+	    {
+		throw new IllegalArgumentException("trials has to be positive");
+	    }
+
+	if(spec.replicas <= 0)
+	    {
+		throw new IllegalArgumentException("replicas has to be positive");
+	    }
+
+	// a seed nobody gave is new every time, so nothing could ever be resumed with it
+	boolean seeded = props.getProperty("seeds") != null || System.getProperty("ethsim.seed") != null;
+
+	if(props.getProperty("seeds") != null)
+	    {
+		for(String seed : props.getProperty("seeds").split(","))
+		    {
+			spec.seeds.add(Long.parseLong(seed.trim()));
+		    }
+	    }
+	else
+	    {
+		spec.seeds.add(config.seed);
+	    }
+
+	spec.dbFile = props.getProperty("db", "ESData.s3db");
+	spec.threads = Integer.parseInt(props.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+	spec.resume = Boolean.parseBoolean(props.getProperty("resume", String.valueOf(seeded)));
+	spec.traceDir = props.getProperty("traceDir");
+	spec.summaryFile = props.getProperty("summary");
+
+	if(spec.threads <= 0)
+	    {
+		throw new IllegalArgumentException("threads has to be positive");
+	    }
+
+	if(spec.resume && !seeded)
+	    {
+		throw new IllegalArgumentException("resume needs the seeds given");
+	    }
+
+	return spec;
+    }
+
+    public int getRunsPerSeed()
+    {
+	return hostCounts.size() * packetSizes.size() * trials;
+    }
+
+    // A digest of everything that decides an experiment's results apart from
+    // its seed: the runs' SimConfig and which runs the sweep makes.  How the
+    // runs are carried out (threads, replicas, the parallel engine, the
+    // queue) gives the same results and is left out.
+    public String getFingerprint()
+    {
+	SimConfig c = config.copy();
+
+	c.seed = 0;
+	c.trial = 0;
+	c.parallel = false;
+	c.queueKind = "";
+
+	try
+	    {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		c.writeTo(out);
+		out.writeUTF(hostCounts + " " + packetSizes + " " + trials);
+		out.close();
+
+		StringBuilder hex = new StringBuilder();
+
+		for(byte b : MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()))
+		    {
+			hex.append(String.format("%02x", b));
+		    }
+
+		return hex.toString();
+	    }
+	catch(IOException e)
+	    {
+		throw new IllegalStateException(e);
+	    }
+	catch(NoSuchAlgorithmException e)
+	    {
+		throw new IllegalStateException(e);
+	    }
+    }
+
+    // "2-6,8,12" -> 2, 3, 4, 5, 6, 8, 12
+    public static List<Integer> ParseIntegers(String list)
+    {
+	List<Integer> values = new ArrayList<Integer>();
+
+	for(String item : list.split(","))
+	    {
+		item = item.trim();
+
+		int dash = item.indexOf('-', 1);
+
+		if(dash < 0)
+		    {
+			values.add(Integer.parseInt(item));
+		    }
+		else
+		    {
+			int first = Integer.parseInt(item.substring(0, dash).trim());
+			int last = Integer.parseInt(item.substring(dash + 1).trim());
+
+			if(last < first)
+			    {
+				throw new IllegalArgumentException("Empty range " + item);
+			    }
+
+			for(int v = first; v <= last; v++)
+			    {
+				values.add(v);
+			    }
+		    }
+	    }
+
+	return values;
+    }
+
+    private static boolean isKey(String key)
+    {
+	for(String k : KEYS)
+	    {
+		if(k.equals(key))
+		    {
+			return true;
+		    }
+	    }
+
+	return false;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * TraceImporter :
+ *      Loads a binary event trace (see Ethernet.TraceWriter) into the
+ *      experiment_event table after the fact, optionally only the part that
+ *      matches a host, some event types or a time range.  The rows are the
+ *      ones logging the run live would have written.
+ *
+ *      java TraceImporter <trace file> <database file> [-host n] [-type TYPE]... [-from t] [-to t]
+ */
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import Ethernet.*;
+
+public class TraceImporter
+{
+    static Logger logger = Logger.getLogger(TraceImporter.class);
+
+    private static int IMPORT_BATCH_SIZE = 4096;
+
+    private static final String USAGE =
+	"usage: TraceImporter <trace file> <database file> [-host n] [-type TYPE]... [-from t] [-to t]";
+
+    public static void main(String[] args)
+    {
+	if(args.length < 2 || args.length % 2 != 0)
+	    {
+		System.out.println(USAGE);
+		return;
+	    }
+
+	int host = -1;
+	ArrayList<SimulatedEvent.SimEvtType> types = new ArrayList<SimulatedEvent.SimEvtType>();
+	double from = Double.NEGATIVE_INFINITY;
+	double to = Double.POSITIVE_INFINITY;
+
+	// every option takes a value; anything else would silently import the whole trace
+	try
+	    {
+		for(int i = 2; i < args.length; i += 2)
+		    {
+			if(args[i].equals("-host"))
+			    {
+				host = Integer.parseInt(args[i + 1]);
+			    }
+			else if(args[i].equals("-type"))
+			    {
+				types.add(SimulatedEvent.SimEvtType.valueOf(args[i + 1]));
+			    }
+			else if(args[i].equals("-from"))
+			    {
+				from = Double.parseDouble(args[i + 1]);
+			    }
+			else if(args[i].equals("-to"))
+			    {
+				to = Double.parseDouble(args[i + 1]);
+			    }
+			else
+			    {
+				System.out.println("Unknown option " + args[i]);
+				System.out.println(USAGE);
+				return;
+			    }
+		    }
+	    }
+	catch(IllegalArgumentException e)
+	    {
+		System.out.println("Bad option value: " + e.getMessage());
+		System.out.println(USAGE);
+		return;
+	    }
+
+	SQLiteLogger db = new SQLiteLogger(args[1]);
+
+	try
+	    {
+		TraceReader in = new TraceReader(new File(args[0]));
+
+		try
+		    {
+			if(host >= 0)
+			    {
+				in.setHost(host);
+			    }
+
+			in.setTypes(types.toArray(new SimulatedEvent.SimEvtType[types.size()]));
+			in.setTimeRange(from, to);
+
+			long imported = Import(in, db);
+
+			System.out.println("Imported " + imported + " events into experiment " + in.getExperimentID());
+		    }
+		finally
+		    {
+			in.close();
+		    }
+	    }
+	catch(IOException e)
+	    {
+		logger.error(e.getMessage());
+	    }
+	finally
+	    {
+		db.close();
+	    }
+    }
+
+    // Copies what the reader lets through, one transaction per batch.  A trace
+    // holds every event that ran; only those live logging would have written
+    // (see SimulatedEvent.isLogged) are imported, so the rows come out the same.
+    public static long Import(TraceReader in, SQLiteLogger db) throws IOException
+    {
+	EventBatch batch = new EventBatch(IMPORT_BATCH_SIZE);
+	batch.experimentID = in.getExperimentID();
+
+	long imported = 0;
+
+	while(in.next())
+	    {
+		if(!SimulatedEvent.isLogged(in.getEventType(), in.isSelfEvent()))
+		    {
+			continue;
+		    }
+
+		batch.add(in.getTimeStart(), in.getTimeDuration(), in.getEventType(), in.getHost(), in.isSelfEvent());
+
+		if(batch.isFull())
+		    {
+			imported += flush(batch, db);
+		    }
+	    }
+
+	imported += flush(batch, db);
+
+	return imported;
+    }
+
+    private static int flush(EventBatch batch, SQLiteLogger db)
+    {
+	int written = db.CreateNewEvents(batch) ? batch.count : 0;
+
+	batch.count = 0;
+
+	return written;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * EndToEndBench:
+ *      Events per second for a whole network, set up the way
+ *      SimulationRun.setUp does it: the paper's 24 hosts on four repeaters,
+ *      the first activeHosts of them transmitting.  Each invocation carries
+ *      the same network on for another span of simulated time and the events
+ *      run are reported through an auxiliary counter, so the score reads
+ *      directly as events per second.
+ */
+
+package Ethernet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Ethernet.Host;
+import Ethernet.SimConfig;
+import Ethernet.SimulatedEvent;
+import Ethernet.SimulatedTime;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBench {
+
+    // a millisecond of a 10 Mbit network, in bit times
+    private static final double SPAN = 10000;
+
+    @Param({"6", "12", "24"})
+    public int activeHosts;
+
+    @Param({"64", "4000"})
+    public int packetSize;
+
+    @Param({"calendar", "heap"})
+    public String queue;
+
+    private SimulatedTime stime;
+
+    // how far the network has been run; kept apart from the clock, which
+    // stops at the last event and can sit still through a long backoff
+    private double horizon;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Events {
+
+	public long events;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+	    events = 0;
+	}
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	SimConfig config = new SimConfig();
+	config.seed = 1;
+	config.queueKind = queue;
+
+	stime = new SimulatedTime(config);
+
+	for (int i = 0; i < config.numHosts; i++) {
+	    stime.addHost(new Host(stime, packetSize, i));
+	}
+
+	for (int i = 0; i < activeHosts; i++) {
+	    Host h = stime.getHosts().get(i);
+	    h.scheduleMyEvent(SimulatedEvent.SimEvtType.PACKET_READY, h.RandomProcessTime(), true);
+	}
+
+	// get past the start-up transient, when every host collides at once
+	horizon = config.minMeasurementTime / 100;
+	stime.advanceTo(horizon);
+    }
+
+    @Benchmark
+    public double run(Events counter) {
+	horizon += SPAN;
+
+	while (stime.nextEventTime() < horizon) {
+	    stime.elapse();
+	    counter.events++;
+	}
+
+	return stime.getCurrentTime();
+    }
+}
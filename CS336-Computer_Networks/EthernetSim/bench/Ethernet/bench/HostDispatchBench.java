@@ -0,0 +1,74 @@
+/*
+ * HostDispatchBench:
+ *      What it costs a Host to react to an event.  foreignEvent is the bare
+ *      dispatch - someone else's event that changes nothing - and
+ *      receiveCycle is a receiver seeing another host's packet go by: the
+ *      preamble arrives (IDLE to BUSY), the end of transmission arrives (BUSY
+ *      to GAP, scheduling GAP_DONE), and the gap runs out (back to IDLE).
+ */
+
+package Ethernet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Ethernet.Host;
+import Ethernet.SimConfig;
+import Ethernet.SimulatedEvent;
+import Ethernet.SimulatedTime;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostDispatchBench {
+
+    private SimulatedTime stime;
+    private Host receiver;
+
+    // events from host 1, which never runs anything itself
+    private SimulatedEvent foreign;
+    private SimulatedEvent preambleStart;
+    private SimulatedEvent transDone;
+
+    @Setup
+    public void setUp() {
+	SimConfig config = new SimConfig();
+	config.seed = 1;
+	config.numHosts = 2;
+
+	stime = new SimulatedTime(config);
+	receiver = new Host(stime, 1500, 0);
+
+	stime.addHost(receiver);
+	stime.addHost(new Host(stime, 1500, 1));
+
+	foreign = new SimulatedEvent(SimulatedEvent.SimEvtType.PACKET_READY, 0, 0, 1, 0, true);
+	preambleStart = new SimulatedEvent(SimulatedEvent.SimEvtType.PREAMBLE_START, 0, 0, 1, 0, false);
+	transDone = new SimulatedEvent(SimulatedEvent.SimEvtType.TRANS_DONE, 0, 0, 1, 0, false);
+    }
+
+    @Benchmark
+    public void foreignEvent() {
+	receiver.reactToEvent(foreign);
+    }
+
+    @Benchmark
+    public boolean receiveCycle() {
+	receiver.reactToArrival(preambleStart);
+	receiver.reactToArrival(transDone);
+	return stime.elapse();
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * NullHost:
+ *      A host that ignores everything it is handed, so that benchmarks of
+ *      SimulatedTime measure the timeline and not the state machine.
+ */
+
+package Ethernet.bench;
+
+import Ethernet.Host;
+import Ethernet.SimulatedEvent;
+import Ethernet.SimulatedTime;
+
+public class NullHost extends Host {
+
+    public NullHost(SimulatedTime parentTime, int inID) {
+	super(parentTime, 64, inID);
+    }
+
+    public void reactToEvent(SimulatedEvent e) {
+    }
+
+    public void reactToArrival(SimulatedEvent e) {
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * SimulatedTimeBench:
+ *      Raw throughput of the timeline.  scheduleElapse is the classic hold
+ *      model - run the next event, schedule a replacement a random offset
+ *      ahead - at a steady population of depth pending events, and
+ *      scheduleDeschedule schedules an event and cancels it again, which
+ *      includes the amortized cost of compacting the tombstones.
+ */
+
+package Ethernet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Ethernet.Host;
+import Ethernet.RandomStream;
+import Ethernet.SimConfig;
+import Ethernet.SimulatedEvent;
+import Ethernet.SimulatedTime;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatedTimeBench {
+
+    // offsets are drawn from a fixed table so the benchmark does not time the generator
+    private static final int OFFSETS = 1 << 12;
+
+    @Param({"calendar", "heap"})
+    public String queue;
+
+    // pending events, about what 6 to 24 busy hosts keep in the timeline
+    @Param({"32", "256"})
+    public int depth;
+
+    private SimulatedTime stime;
+    private double[] offsets;
+    private int nextOffset = 0;
+
+    @Setup
+    public void setUp() {
+	SimConfig config = new SimConfig();
+	config.seed = 1;
+	config.numHosts = 1;
+
+	stime = new SimulatedTime(config, SimulatedTime.newQueue(queue));
+	stime.addHost(new NullHost(stime, 0));
+
+	RandomStream r = new RandomStream(config.seed);
+	offsets = new double[OFFSETS];
+
+	// spread like the host's own mix of propagation delays, preambles, gaps and backoffs
+	for (int i = 0; i < OFFSETS; i++) {
+	    offsets[i] = r.nextInt(4 * (int)Host.SLOT_TIME) + r.nextDouble();
+	}
+
+	for (int i = 0; i < depth; i++) {
+	    stime.schedule(SimulatedEvent.SimEvtType.PACKET_READY, nextOffset(), 0, 0, true);
+	}
+    }
+
+    private double nextOffset() {
+	nextOffset = (nextOffset + 1) & (OFFSETS - 1);
+	return offsets[nextOffset];
+    }
+
+    @Benchmark
+    public boolean scheduleElapse() {
+	stime.schedule(SimulatedEvent.SimEvtType.PACKET_READY, nextOffset(), 0, 0, true);
+	return stime.elapse();
+    }
+
+    @Benchmark
+    public boolean scheduleDeschedule() {
+	SimulatedEvent e = stime.schedule(SimulatedEvent.SimEvtType.TRANS_DONE, nextOffset(), 0, 0, false);
+	return stime.cancel(e, e.seq);
+    }
+}
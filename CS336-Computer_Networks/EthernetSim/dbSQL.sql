@@ -36,3 +36,45 @@
 --	average_transmission_delay REAL
 --);
 
+
+
+-- seed every run of the experiment derives its random streams from, and
+-- which trial of a configuration a summary row is; SQLiteLogger adds these
+-- (and fairness_index) itself when it opens an older database file
+--ALTER TABLE experiment ADD COLUMN seed INTEGER;
+--ALTER TABLE experiment_summary ADD COLUMN fairness_index REAL;
+--ALTER TABLE experiment_summary ADD COLUMN trial INTEGER;
+
+
+-- what the experiment's runs were made under, so that a sweep only resumes
+-- an experiment with the same settings; see SweepSpec.getFingerprint.
+-- SQLiteLogger adds it when it is missing
+--ALTER TABLE experiment ADD COLUMN fingerprint VARCHAR(64);
+
+
+-- per-run distributions of transmission delay and backoff slots, one row
+-- per metric next to each experiment_summary row; histogram is the
+-- LogLinearHistogram itself so trials can be merged.  SQLiteLogger creates
+-- this table when it is missing
+--CREATE TABLE experiment_distribution(
+--	distribution_id INTEGER primary key,
+--	experiment_id INTEGER,
+--	active_hosts INTEGER,
+--	packet_size INTEGER,
+--	trial INTEGER,
+--	metric VARCHAR(32),
+--	samples INTEGER,
+--	mean REAL,
+--	std_dev REAL,
+--	min REAL,
+--	p50 REAL,
+--	p90 REAL,
+--	p99 REAL,
+--	max REAL,
+--	histogram BLOB
+--);
+
+
+-- an experiment's runs in configuration order, for SummaryCursor and for
+-- resuming sweeps; SQLiteLogger creates it when it is missing
+--CREATE INDEX experiment_summary_config ON experiment_summary (experiment_id, active_hosts, packet_size, trial);
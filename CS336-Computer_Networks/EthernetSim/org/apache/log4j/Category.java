@@ -123,7 +123,10 @@ public class Category implements AppenderAttachable {
   protected LoggerRepository repository;
 
 
-  AppenderAttachableImpl aai;
+  /**
+     The appenders of this category. Changed only under the lock on
+     this category; {@link #callAppenders} reads it without one. */
+  volatile AppenderAttachableImpl aai;
 
   /** Additivity is set to true by default, that is children inherit
       the appenders of their ancestors by default. If this variable is
@@ -132,7 +135,7 @@ public class Category implements AppenderAttachable {
       of this category will inherit its appenders, unless the children
       have their additivity flag set to <code>false</code> too. See
       the user manual for more details. */
-  protected boolean additive = true;
+  volatile protected boolean additive = true;
 
   /**
      This constructor created a new <code>Category</code> instance and
@@ -194,20 +197,24 @@ public class Category implements AppenderAttachable {
      hierarchy circumventing any evaluation of whether to log or not
      to log the particular log request.
 
+     <p>No category is locked on the way. Each one is asked for the
+     appenders it had as of its last change, so an appender removed
+     while the event is under way may still be handed the event.
+
      @param event the event to log.  */
   public
   void callAppenders(LoggingEvent event) {
     int writes = 0;
 
     for(Category c = this; c != null; c=c.parent) {
-      // Protected against simultaneous call to addAppender, removeAppender,...
-      synchronized(c) {
-	if(c.aai != null) {
-	  writes += c.aai.appendLoopOnAppenders(event);
-	}
-	if(!c.additive) {
-	  break;
-	}
+      // AppenderAttachableImpl publishes a new list on addAppender,
+      // removeAppender,... rather than change the one being walked
+      AppenderAttachableImpl appenders = c.aai;
+      if(appenders != null) {
+	writes += appenders.appendLoopOnAppenders(event);
+      }
+      if(!c.additive) {
+	break;
       }
     }
 
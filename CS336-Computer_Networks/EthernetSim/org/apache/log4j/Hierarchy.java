@@ -28,9 +28,9 @@
 package org.apache.log4j;
 
 
-import java.util.Hashtable;
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.spi.LoggerFactory;
 import org.apache.log4j.spi.HierarchyEventListener;
@@ -68,7 +68,10 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   private LoggerFactory defaultFactory;
   private Vector listeners;
 
-  Hashtable ht;
+  /**
+     Loggers and provision nodes by name. Lookups go straight to the
+     map; anything that adds to it holds the lock on it. */
+  ConcurrentHashMap ht;
   Logger root;
   RendererMap rendererMap;
 
@@ -88,7 +91,7 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
    */
   public
   Hierarchy(Logger root) {
-    ht = new Hashtable();
+    ht = new ConcurrentHashMap();
     listeners = new Vector(1);
     this.root = root;
     // Enable all level levels by default.
@@ -151,7 +154,7 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   */
   public
   Logger exists(String name) {
-    Object o = ht.get(new CategoryKey(name));
+    Object o = ht.get(name);
     if(o instanceof Logger) {
       return (Logger) o;
     } else {
@@ -256,6 +259,10 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
      <code>factory</code> parameter and linked with its existing
      ancestors as well as children.
 
+     <p>A logger that already exists is found without taking any
+     lock. Only creating one, and linking it into the hierarchy, is
+     done under the lock on <code>ht</code>.
+
      @param name The name of the logger to retrieve.
      @param factory The factory that will make the new logger instance.
 
@@ -263,19 +270,23 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   public
   Logger getLogger(String name, LoggerFactory factory) {
     //System.out.println("getInstance("+name+") called.");
-    CategoryKey key = new CategoryKey(name);
-    // Synchronize to prevent write conflicts. Read conflicts (in
-    // getChainedLevel method) are possible only if variable
-    // assignments are non-atomic.
+    Object o = ht.get(name);
+    if(o instanceof Logger) {
+      return (Logger) o;
+    }
+
+    // Synchronize to prevent write conflicts. A new logger is linked
+    // to its parent and children before it is put in ht, so whoever
+    // finds it there without the lock sees it complete.
     Logger logger;
 
     synchronized(ht) {
-      Object o = ht.get(key);
+      o = ht.get(name);
       if(o == null) {
 	logger = factory.makeNewLoggerInstance(name);
 	logger.setHierarchy(this);
-	ht.put(key, logger);
 	updateParents(logger);
+	ht.put(name, logger);
 	return logger;
       } else if(o instanceof Logger) {
 	return (Logger) o;
@@ -283,9 +294,9 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
 	//System.out.println("("+name+") ht.get(this) returned ProvisionNode");
 	logger = factory.makeNewLoggerInstance(name);
 	logger.setHierarchy(this);
-	ht.put(key, logger);
 	updateChildren((ProvisionNode) o, logger);
 	updateParents(logger);
+	ht.put(name, logger);
 	return logger;
       }
       else {
@@ -513,13 +524,12 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
       String substr = name.substring(0, i);
 
       //System.out.println("Updating parent : " + substr);
-      CategoryKey key = new CategoryKey(substr); // simple constructor
-      Object o = ht.get(key);
+      Object o = ht.get(substr);
       // Create a provision node for a future parent.
       if(o == null) {
 	//System.out.println("No parent "+substr+" found. Creating ProvisionNode.");
 	ProvisionNode pn = new ProvisionNode(cat);
-	ht.put(key, pn);
+	ht.put(substr, pn);
       } else if(o instanceof Category) {
 	parentFound = true;
 	cat.parent = (Category) o;
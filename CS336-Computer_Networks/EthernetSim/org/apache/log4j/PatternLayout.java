@@ -417,6 +417,9 @@ public class PatternLayout extends Layout {
   // output buffer appended to when format() is invoked
   private StringBuffer sbuf = new StringBuffer(BUF_SIZE);
 
+  // each thread's buffer for formatToBuilder()
+  private final ThreadLocal threadBuffer = new ThreadLocal();
+
   private String pattern;
 
   private PatternConverter head;
@@ -508,4 +511,43 @@ public class PatternLayout extends Layout {
     }
     return sbuf.toString();
   }
+
+  /**
+     Appends the event, formatted as specified by the conversion
+     pattern, to <code>sbuf</code>. Unlike {@link #format(LoggingEvent)}
+     this does not make a String of the result, and the converters
+     for the usual <code>%d %p %c %m %n</code> allocate nothing.
+
+     @since 1.2.17 */
+  public void format(StringBuilder sbuf, LoggingEvent event) {
+    PatternConverter c = head;
+
+    while(c != null) {
+      c.format(sbuf, event);
+      c = c.next;
+    }
+  }
+
+  /**
+     Formats the event into a <code>StringBuilder</code> kept for the
+     calling thread and returns that builder, which holds the result
+     only until the same thread calls this method again. As with
+     {@link #format(LoggingEvent)}, the converters themselves are not
+     thread safe: appenders sharing this layout must not format at
+     the same time.
+
+     @since 1.2.17 */
+  public StringBuilder formatToBuilder(LoggingEvent event) {
+    StringBuilder buf = (StringBuilder) threadBuffer.get();
+
+    if(buf == null || buf.capacity() > MAX_CAPACITY) {
+      buf = new StringBuilder(BUF_SIZE);
+      threadBuffer.set(buf);
+    } else {
+      buf.setLength(0);
+    }
+
+    format(buf, event);
+    return buf;
+  }
 }
@@ -0,0 +1,697 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.helpers.AppenderAttachableImpl;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.AppenderAttachable;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * An asynchronous appender built on a preallocated ring buffer.
+ * <p/>
+ * Like {@link AsyncAppender} it hands the events sent to it to a dispatcher
+ * thread, which passes them on to the appenders attached to it. Unlike
+ * AsyncAppender no lock is taken on the way in: logging threads claim a
+ * slot in the ring by sequence number with a compare-and-set, fill it and
+ * publish it, and the dispatcher takes every event published since its last
+ * pass as one batch. After each batch, every attached appender that is
+ * {@link Flushable} is flushed, so for example a {@link FileAppender} with
+ * <b>ImmediateFlush</b> off writes once a batch rather than once an event.
+ * <p/>
+ * <b>WaitStrategy</b> is how a thread waits, whether the dispatcher for
+ * events or a logging thread for room in a full ring: <code>spin</code>,
+ * <code>yield</code> or <code>park</code> (the default). Spinning and
+ * yielding answer fastest but keep a processor busy while idle.
+ * <p/>
+ * <b>Overflow</b> is what happens when the ring is full:
+ * <ul>
+ * <li><code>block</code> (the default) waits for room,</li>
+ * <li><code>dropOldest</code> throws away the oldest event still waiting,</li>
+ * <li><code>dropBelowLevel</code> throws away the new event if its level is
+ * below <b>DropThreshold</b> (WARN by default) and waits otherwise.</li>
+ * </ul>
+ * The dispatcher thread itself, and a thread that is interrupted, never
+ * wait; their events are dropped instead. Dropped events are counted, see
+ * {@link #getDroppedOldest} and {@link #getDroppedIncoming}.
+ * <p/>
+ * <b>BufferSize</b> is rounded up to a power of two and takes effect when
+ * the options are activated, which also starts the dispatcher.
+ * <p/>
+ * <b>Important note:</b> like AsyncAppender this appender can only be
+ * script configured using the {@link org.apache.log4j.xml.DOMConfigurator}.
+ *
+ * @since 1.2.17
+ */
+public class RingBufferAppender extends AppenderSkeleton
+  implements AppenderAttachable {
+  /**
+   * The default buffer size is 1024 events.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+  /**
+   * Wait strategies.
+   */
+  static final int SPIN = 0;
+  static final int YIELD = 1;
+  static final int PARK = 2;
+
+  /**
+   * Overflow policies.
+   */
+  static final int BLOCK = 0;
+  static final int DROP_OLDEST = 1;
+  static final int DROP_BELOW_LEVEL = 2;
+
+  /**
+   * Waits this long, in nanoseconds, each time round when parking for
+   * room in the ring; the dispatcher parks until woken instead, but never
+   * longer than DISPATCHER_PARK_NANOS.
+   */
+  private static final long PARK_NANOS = 100000L;
+  private static final long DISPATCHER_PARK_NANOS = 10000000L;
+
+  /**
+   * Nested appenders.
+   */
+  private final AppenderAttachableImpl appenders = new AppenderAttachableImpl();
+
+  /**
+   * The ring, null until the options are activated.
+   */
+  private volatile Ring ring;
+
+  /**
+   * Dispatcher, null until the options are activated.
+   */
+  private volatile Thread dispatcher;
+
+  /**
+   * Set by close() for the threads that read it without holding the lock,
+   * the inherited closed field being neither volatile nor safe to wait on.
+   */
+  private volatile boolean shuttingDown;
+
+  /**
+   * Events thrown away to make room for new ones.
+   */
+  private final AtomicLong droppedOldest = new AtomicLong();
+
+  /**
+   * New events refused for want of room.
+   */
+  private final AtomicLong droppedIncoming = new AtomicLong();
+
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+  private int waitStrategy = PARK;
+  private int overflow = BLOCK;
+  private Level dropThreshold = Level.WARN;
+  private boolean locationInfo = false;
+
+  /**
+   * Create new instance. Nothing is started until {@link #activateOptions}
+   * or the first event.
+   */
+  public RingBufferAppender() {
+  }
+
+  /**
+   * Allocates the ring and starts the dispatcher. Does nothing once it has
+   * been started.
+   */
+  public synchronized void activateOptions() {
+    if (ring != null) {
+      return;
+    }
+
+    int capacity = 1;
+    while (capacity < bufferSize) {
+      capacity <<= 1;
+    }
+    ring = new Ring(capacity);
+
+    Thread thread = new Thread(new Dispatcher());
+
+    // It is the user's responsibility to close appenders before
+    // exiting.
+    thread.setDaemon(true);
+    thread.setName("RingBufferAppender-Dispatcher-" + thread.getName());
+    dispatcher = thread;
+    thread.start();
+  }
+
+  /**
+   * Add appender.
+   *
+   * @param newAppender appender to add, may not be null.
+   */
+  public void addAppender(final Appender newAppender) {
+    appenders.addAppender(newAppender);
+  }
+
+  /**
+   * The same checks as {@link AppenderSkeleton#doAppend}, without taking the
+   * lock on this appender, so that logging threads only meet in the ring.
+   *
+   * @param event event.
+   */
+  public void doAppend(final LoggingEvent event) {
+    if (shuttingDown) {
+      LogLog.error("Attempted to append to closed appender named [" + name + "].");
+      return;
+    }
+
+    if (!isAsSevereAsThreshold(event.getLevel())) {
+      return;
+    }
+
+    Filter f = this.headFilter;
+
+    FILTER_LOOP:
+    while (f != null) {
+      switch (f.decide(event)) {
+      case Filter.DENY: return;
+      case Filter.ACCEPT: break FILTER_LOOP;
+      case Filter.NEUTRAL: f = f.getNext();
+      }
+    }
+
+    append(event);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void append(final LoggingEvent event) {
+    Ring r = ring;
+
+    if (r == null) {
+      activateOptions();
+      r = ring;
+    }
+
+    // Set the NDC and thread name for the calling thread as these
+    // LoggingEvent fields were not set at event creation time.
+    event.getNDC();
+    event.getThreadName();
+    // Get a copy of this thread's MDC.
+    event.getMDCCopy();
+    if (locationInfo) {
+      event.getLocationInformation();
+    }
+    event.getRenderedMessage();
+    event.getThrowableStrRep();
+
+    long seq;
+    int round = 0;
+
+    while (true) {
+      seq = r.claimed.get();
+
+      if (seq - r.head.get() < r.entries.length) {
+        if (r.claimed.compareAndSet(seq, seq + 1)) {
+          break;
+        }
+      } else if (!makeRoom(r, event, round++)) {
+        return;
+      }
+    }
+
+    int slot = (int) seq & r.mask;
+    r.entries[slot] = event;
+    r.available.set(slot, seq);
+
+    if (r.sleeping) {
+      LockSupport.unpark(dispatcher);
+    }
+  }
+
+  /**
+   * Called when the ring is full. Returns true to try again for a slot and
+   * false when the event has been dropped.
+   */
+  private boolean makeRoom(final Ring r, final LoggingEvent event, final int round) {
+    if (overflow == DROP_OLDEST) {
+      // only an event that has been published may be thrown away, or the
+      // thread still filling its slot could overwrite a later one
+      long oldest = r.head.get();
+
+      if (r.available.get((int) oldest & r.mask) == oldest
+          && r.head.compareAndSet(oldest, oldest + 1)) {
+        droppedOldest.incrementAndGet();
+      } else {
+        idle(waitStrategy, round);
+      }
+
+      return true;
+    }
+
+    if ((overflow == DROP_BELOW_LEVEL && !event.getLevel().isGreaterOrEqual(dropThreshold))
+        || Thread.currentThread() == dispatcher
+        || Thread.currentThread().isInterrupted()
+        || shuttingDown) {
+      droppedIncoming.incrementAndGet();
+      return false;
+    }
+
+    idle(waitStrategy, round);
+    return true;
+  }
+
+  /**
+   * Waits a moment in the given way.
+   */
+  static void idle(final int strategy, final int round) {
+    switch (strategy) {
+    case SPIN:
+      break;
+    case YIELD:
+      Thread.yield();
+      break;
+    default:
+      // a few quick tries first, the ring usually drains at once
+      if (round < 100) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Close this <code>RingBufferAppender</code>. The dispatcher passes on
+   * every event already in the ring before it stops.
+   */
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+
+    shuttingDown = true;
+
+    Thread thread = dispatcher;
+
+    if (thread != null) {
+      LockSupport.unpark(thread);
+
+      // an attached appender closing this one from the dispatcher would
+      // otherwise wait on itself; the dispatcher stops once it returns
+      if (Thread.currentThread() != thread) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          LogLog.error(
+            "Got an InterruptedException while waiting for the "
+            + "dispatcher to finish.", e);
+        }
+      }
+    }
+
+    if (getDropped() > 0) {
+      LogLog.warn("RingBufferAppender [" + name + "] dropped " + droppedOldest.get()
+                  + " of its oldest events and " + droppedIncoming.get() + " new ones for want of room.");
+    }
+
+    //
+    //    close all attached appenders.
+    //
+    Enumeration iter = appenders.getAllAppenders();
+
+    if (iter != null) {
+      while (iter.hasMoreElements()) {
+        ((Appender) iter.nextElement()).close();
+      }
+    }
+  }
+
+  /**
+   * Get iterator over attached appenders.
+   * @return iterator or null if no attached appenders.
+   */
+  public Enumeration getAllAppenders() {
+    return appenders.getAllAppenders();
+  }
+
+  /**
+   * Get appender by name.
+   *
+   * @param name name, may not be null.
+   * @return matching appender or null.
+   */
+  public Appender getAppender(final String name) {
+    return appenders.getAppender(name);
+  }
+
+  /**
+   * Determines if specified appender is attached.
+   * @param appender appender.
+   * @return true if attached.
+   */
+  public boolean isAttached(final Appender appender) {
+    return appenders.isAttached(appender);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean requiresLayout() {
+    return false;
+  }
+
+  /**
+   * Removes and closes all attached appenders.
+   */
+  public void removeAllAppenders() {
+    appenders.removeAllAppenders();
+  }
+
+  /**
+   * Removes an appender.
+   * @param appender appender to remove.
+   */
+  public void removeAppender(final Appender appender) {
+    appenders.removeAppender(appender);
+  }
+
+  /**
+   * Remove appender by name.
+   * @param name name.
+   */
+  public void removeAppender(final String name) {
+    appenders.removeAppender(name);
+  }
+
+  /**
+   * Events thrown away under the <code>dropOldest</code> policy.
+   * @return count since the appender was made.
+   */
+  public long getDroppedOldest() {
+    return droppedOldest.get();
+  }
+
+  /**
+   * New events refused because the ring was full: those below
+   * <b>DropThreshold</b> under the <code>dropBelowLevel</code> policy, and
+   * those from threads that could not wait.
+   * @return count since the appender was made.
+   */
+  public long getDroppedIncoming() {
+    return droppedIncoming.get();
+  }
+
+  /**
+   * All events dropped.
+   * @return count since the appender was made.
+   */
+  public long getDropped() {
+    return droppedOldest.get() + droppedIncoming.get();
+  }
+
+  /**
+   * Events waiting in the ring.
+   * @return count, 0 before the options are activated.
+   */
+  public int getPending() {
+    Ring r = ring;
+    return (r == null) ? 0 : (int) (r.claimed.get() - r.head.get());
+  }
+
+  /**
+   * Sets whether the location of the logging request call should be
+   * captured; see {@link AsyncAppender#setLocationInfo}.
+   * @param flag true if location information should be extracted.
+   */
+  public void setLocationInfo(final boolean flag) {
+    locationInfo = flag;
+  }
+
+  /**
+   * Gets whether the location of the logging request call
+   * should be captured.
+   *
+   * @return the current value of the <b>LocationInfo</b> option.
+   */
+  public boolean getLocationInfo() {
+    return locationInfo;
+  }
+
+  /**
+   * Sets the number of events the ring holds, rounded up to a power of two
+   * when the options are activated.
+   *
+   * @param size buffer size, must be positive.
+   */
+  public void setBufferSize(final int size) {
+    if (size < 0) {
+      throw new java.lang.NegativeArraySizeException("size");
+    }
+
+    bufferSize = (size < 1) ? 1 : size;
+  }
+
+  /**
+   * Gets the requested buffer size.
+   * @return the current value of the <b>BufferSize</b> option.
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Sets how threads wait: <code>spin</code>, <code>yield</code> or
+   * <code>park</code>.
+   * @param value strategy name, case ignored.
+   */
+  public void setWaitStrategy(final String value) {
+    if ("spin".equalsIgnoreCase(value)) {
+      waitStrategy = SPIN;
+    } else if ("yield".equalsIgnoreCase(value)) {
+      waitStrategy = YIELD;
+    } else if ("park".equalsIgnoreCase(value)) {
+      waitStrategy = PARK;
+    } else {
+      LogLog.warn("Unknown WaitStrategy [" + value + "], using park.");
+      waitStrategy = PARK;
+    }
+  }
+
+  /**
+   * Gets the wait strategy.
+   * @return the current value of the <b>WaitStrategy</b> option.
+   */
+  public String getWaitStrategy() {
+    return (waitStrategy == SPIN) ? "spin" : (waitStrategy == YIELD) ? "yield" : "park";
+  }
+
+  /**
+   * Sets what happens when the ring is full: <code>block</code>,
+   * <code>dropOldest</code> or <code>dropBelowLevel</code>.
+   * @param value policy name, case ignored.
+   */
+  public void setOverflow(final String value) {
+    if ("block".equalsIgnoreCase(value)) {
+      overflow = BLOCK;
+    } else if ("dropOldest".equalsIgnoreCase(value)) {
+      overflow = DROP_OLDEST;
+    } else if ("dropBelowLevel".equalsIgnoreCase(value)) {
+      overflow = DROP_BELOW_LEVEL;
+    } else {
+      LogLog.warn("Unknown Overflow [" + value + "], using block.");
+      overflow = BLOCK;
+    }
+  }
+
+  /**
+   * Gets the overflow policy.
+   * @return the current value of the <b>Overflow</b> option.
+   */
+  public String getOverflow() {
+    return (overflow == DROP_OLDEST) ? "dropOldest" : (overflow == DROP_BELOW_LEVEL) ? "dropBelowLevel" : "block";
+  }
+
+  /**
+   * Sets the level below which new events are dropped when the ring is
+   * full under the <code>dropBelowLevel</code> policy.
+   * @param level level, may not be null.
+   */
+  public void setDropThreshold(final Level level) {
+    dropThreshold = level;
+  }
+
+  /**
+   * Gets the drop threshold.
+   * @return the current value of the <b>DropThreshold</b> option.
+   */
+  public Level getDropThreshold() {
+    return dropThreshold;
+  }
+
+  /**
+   * The preallocated ring. Sequence numbers only ever grow; sequence
+   * <code>s</code> lives in slot <code>s &amp; mask</code>.
+   */
+  private static final class Ring {
+    /**
+     * Events by slot.
+     */
+    final LoggingEvent[] entries;
+
+    /**
+     * The sequence last published in each slot.
+     */
+    final AtomicLongArray available;
+
+    /**
+     * Next sequence a logging thread may claim.
+     */
+    final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Oldest sequence not yet taken by the dispatcher or thrown away.
+     */
+    final AtomicLong head = new AtomicLong();
+
+    final int mask;
+
+    /**
+     * Set while the dispatcher is parked waiting for events.
+     */
+    volatile boolean sleeping;
+
+    Ring(final int capacity) {
+      entries = new LoggingEvent[capacity];
+      available = new AtomicLongArray(capacity);
+      mask = capacity - 1;
+
+      for (int i = 0; i < capacity; i++) {
+        available.set(i, -1);
+      }
+    }
+
+    /**
+     * Whether the event at sequence <code>seq</code> has been published.
+     */
+    boolean isPublished(final long seq) {
+      return available.get((int) seq & mask) == seq;
+    }
+  }
+
+  /**
+   * Event dispatcher.
+   */
+  private class Dispatcher implements Runnable {
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+      Ring r = ring;
+      LoggingEvent[] batch = new LoggingEvent[r.entries.length];
+      int round = 0;
+      int limit = batch.length;
+
+      while (true) {
+        long first = r.head.get();
+        int n = 0;
+
+        while (n < limit && r.isPublished(first + n)) {
+          batch[n] = r.entries[(int) (first + n) & r.mask];
+          n++;
+        }
+
+        if (n == 0) {
+          if (shuttingDown && r.claimed.get() == r.head.get()) {
+            break;
+          }
+
+          waitForEvents(r, round++);
+          continue;
+        }
+
+        // a logging thread throwing away the oldest event moves head too,
+        // in which case what was read may already be overwritten; take less
+        // at a time until a batch gets through
+        if (!r.head.compareAndSet(first, first + n)) {
+          limit = Math.max(1, n / 2);
+          continue;
+        }
+
+        round = 0;
+        limit = batch.length;
+
+        for (int i = 0; i < n; i++) {
+          appenders.appendLoopOnAppenders(batch[i]);
+          batch[i] = null;
+        }
+
+        endOfBatch();
+      }
+    }
+
+    private void waitForEvents(final Ring r, final int round) {
+      if (waitStrategy != PARK) {
+        idle(waitStrategy, round);
+        return;
+      }
+
+      r.sleeping = true;
+
+      if (!r.isPublished(r.head.get()) && !shuttingDown) {
+        LockSupport.parkNanos(RingBufferAppender.this, DISPATCHER_PARK_NANOS);
+      }
+
+      r.sleeping = false;
+    }
+
+    /**
+     * Flushes every attached appender that can be.
+     */
+    private void endOfBatch() {
+      Enumeration iter = appenders.getAllAppenders();
+
+      if (iter == null) {
+        return;
+      }
+
+      while (iter.hasMoreElements()) {
+        Object next = iter.nextElement();
+
+        if (next instanceof Flushable) {
+          try {
+            ((Flushable) next).flush();
+          } catch (IOException e) {
+            LogLog.error("Could not flush appender [" + ((Appender) next).getName() + "].", e);
+          }
+        }
+      }
+    }
+  }
+}
@@ -17,12 +17,15 @@
 
 package org.apache.log4j;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 
+import org.apache.log4j.helpers.ByteBufferWriter;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.QuietWriter;
 import org.apache.log4j.spi.ErrorHandler;
@@ -37,7 +40,7 @@ import org.apache.log4j.spi.LoggingEvent;
 
    @author Ceki G&uuml;lc&uuml;
    @since 1.1 */
-public class WriterAppender extends AppenderSkeleton {
+public class WriterAppender extends AppenderSkeleton implements Flushable {
 
 
   /**
@@ -63,6 +66,14 @@ public class WriterAppender extends AppenderSkeleton {
      encoding.  */
   protected String encoding;
 
+  /**
+     Whether to format with {@link PatternLayout#formatToBuilder} and
+     encode with a {@link ByteBufferWriter}, see {@link #setGarbageFree}.
+     Off by default.
+
+     @since 1.2.17 */
+  protected boolean garbageFree = false;
+
   /**
      This is the {@link QuietWriter quietWriter} where we will write
      to.
@@ -124,6 +135,34 @@ public class WriterAppender extends AppenderSkeleton {
     return immediateFlush;
   }
 
+  /**
+     If the <b>GarbageFree</b> option is set to <code>true</code> and the
+     layout is a {@link PatternLayout}, each event is formatted into a
+     <code>StringBuilder</code> reused by the calling thread and written
+     without ever becoming a String, and writers this appender opens on
+     an output stream encode into a reusable byte buffer (see {@link
+     ByteBufferWriter}). Once warmed up, writing an event in the usual
+     <code>%d %p %c %m %n</code> patterns then allocates nothing.
+
+     <p>Takes effect for writers opened after it is set, so it has to be
+     set before the options are activated. Subclasses of PatternLayout
+     that override {@link Layout#format} are bypassed in this mode.
+
+     @since 1.2.17 */
+  public
+  void setGarbageFree(boolean value) {
+    garbageFree = value;
+  }
+
+  /**
+     Returns value of the <b>GarbageFree</b> option.
+
+     @since 1.2.17 */
+  public
+  boolean getGarbageFree() {
+    return garbageFree;
+  }
+
   /**
      Does nothing.
   */
@@ -230,12 +269,26 @@ public class WriterAppender extends AppenderSkeleton {
      encoding used will depend on the value of the
      <code>encoding</code> property.  If the encoding value is
      specified incorrectly the writer will be opened using the default
-     system encoding (an error message will be printed to the loglog.  */
+     system encoding (an error message will be printed to the loglog.
+     With <b>GarbageFree</b> set the writer is a {@link
+     ByteBufferWriter}.  */
   protected
   OutputStreamWriter createWriter(OutputStream os) {
     OutputStreamWriter retval = null;
 
     String enc = getEncoding();
+    if(garbageFree) {
+      Charset charset = Charset.defaultCharset();
+      if(enc != null) {
+	try {
+	  charset = Charset.forName(enc);
+	} catch(IllegalArgumentException e) {
+	  LogLog.warn("Error initializing output writer.");
+	  LogLog.warn("Unsupported encoding?");
+	}
+      }
+      return new ByteBufferWriter(os, charset);
+    }
     if(enc != null) {
       try {
 	retval = new OutputStreamWriter(os, enc);
@@ -307,7 +360,11 @@ public class WriterAppender extends AppenderSkeleton {
      @since 0.9.0 */
   protected
   void subAppend(LoggingEvent event) {
-    this.qw.write(this.layout.format(event));
+    if(garbageFree && this.layout instanceof PatternLayout) {
+      this.qw.append(((PatternLayout) this.layout).formatToBuilder(event));
+    } else {
+      this.qw.write(this.layout.format(event));
+    }
 
     if(layout.ignoresThrowable()) {
       String[] s = event.getThrowableStrRep();
@@ -384,4 +441,18 @@ public class WriterAppender extends AppenderSkeleton {
   protected boolean shouldFlush(final LoggingEvent event) {
      return immediateFlush;
   }
+
+  /**
+     Flushes the underlying writer, if any. Lets an appender that hands
+     on events in batches, such as {@link RingBufferAppender}, have this one
+     flush once a batch when <b>ImmediateFlush</b> is off.
+
+     @since 1.2.17 */
+  public
+  synchronized
+  void flush() {
+    if(this.qw != null) {
+      this.qw.flush();
+    }
+  }
 }
@@ -21,67 +21,86 @@ import org.apache.log4j.spi.AppenderAttachable;
 import org.apache.log4j.spi.LoggingEvent;
 
 import org.apache.log4j.Appender;
-import java.util.Vector;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 
 /**
    A straightforward implementation of the {@link AppenderAttachable}
    interface.
 
+   <p>The appenders are kept in an array that is never changed once
+   published. Adding or removing an appender copies the array under
+   the lock on this object and publishes the copy. Everything that
+   only reads the appenders, {@link #appendLoopOnAppenders} in
+   particular, works on whichever array was current when it started
+   and takes no lock.
+
    @author Ceki G&uuml;lc&uuml;
    @since version 0.9.1 */
 public class AppenderAttachableImpl implements AppenderAttachable {
   
-  /** Array of appenders. */
-  protected Vector  appenderList;
+  /** Array of appenders, <code>null</code> until the first one is
+      added and again after {@link #removeAllAppenders}. */
+  protected volatile Appender[] appenderList;
 
   /**
      Attach an appender. If the appender is already in the list in
      won't be added again.
   */
   public
+  synchronized
   void addAppender(Appender newAppender) {
     // Null values for newAppender parameter are strictly forbidden.
     if(newAppender == null)
       return;
     
-    if(appenderList == null) {
-      appenderList = new Vector(1);
+    Appender[] list = appenderList;
+    if(list == null) {
+      appenderList = new Appender[] { newAppender };
+      return;
+    }
+    if(indexOf(list, newAppender) < 0) {
+      Appender[] grown = new Appender[list.length + 1];
+      System.arraycopy(list, 0, grown, 0, list.length);
+      grown[list.length] = newAppender;
+      appenderList = grown;
     }
-    if(!appenderList.contains(newAppender))
-      appenderList.addElement(newAppender);
   }
 
   /**
      Call the <code>doAppend</code> method on all attached appenders.  */
   public
   int appendLoopOnAppenders(LoggingEvent event) {
-    int size = 0;
-    Appender appender;
-
-    if(appenderList != null) {
-      size = appenderList.size();
-      for(int i = 0; i < size; i++) {
-	appender = (Appender) appenderList.elementAt(i);
-	appender.doAppend(event);
-      }
-    }    
-    return size;
+    Appender[] list = appenderList;
+
+    if(list == null)
+      return 0;
+
+    for(int i = 0; i < list.length; i++) {
+      list[i].doAppend(event);
+    }
+    return list.length;
   }
 
 
   /**
      Get all attached appenders as an Enumeration. If there are no
      attached appenders <code>null</code> is returned.
+
+     <p>The enumeration is over the appenders attached at the time of
+     the call; later changes do not show up in it.
      
      @return Enumeration An enumeration of attached appenders.
    */
   public
   Enumeration getAllAppenders() {
-    if(appenderList == null)
+    Appender[] list = appenderList;
+
+    if(list == null)
       return null;
     else 
-      return appenderList.elements();    
+      return Collections.enumeration(Arrays.asList(list));
   }
 
   /**
@@ -93,17 +112,13 @@ public class AppenderAttachableImpl implements AppenderAttachable {
    */
   public
   Appender getAppender(String name) {
-     if(appenderList == null || name == null)
+     Appender[] list = appenderList;
+
+     if(list == null || name == null)
       return null;
 
-     int size = appenderList.size();
-     Appender appender;
-     for(int i = 0; i < size; i++) {
-       appender = (Appender) appenderList.elementAt(i);
-       if(name.equals(appender.getName()))
-	  return appender;
-     }
-     return null;    
+     int i = indexOf(list, name);
+     return (i < 0) ? null : list[i];
   }
 
 
@@ -114,17 +129,16 @@ public class AppenderAttachableImpl implements AppenderAttachable {
      @since 1.2 */
   public 
   boolean isAttached(Appender appender) {
-    if(appenderList == null || appender == null)
+    Appender[] list = appenderList;
+
+    if(list == null || appender == null)
       return false;
 
-     int size = appenderList.size();
-     Appender a;
-     for(int i = 0; i < size; i++) {
-       a  = (Appender) appenderList.elementAt(i);
-       if(a == appender)
-	  return true;
-     }
-     return false;    
+    for(int i = 0; i < list.length; i++) {
+      if(list[i] == appender)
+	return true;
+    }
+    return false;
   }
 
 
@@ -134,14 +148,16 @@ public class AppenderAttachableImpl implements AppenderAttachable {
    * */
   public
   void removeAllAppenders() {
-    if(appenderList != null) {
-      int len = appenderList.size();      
-      for(int i = 0; i < len; i++) {
-	Appender a = (Appender) appenderList.elementAt(i);
-	a.close();
+    Appender[] list;
+
+    synchronized(this) {
+      list = appenderList;
+      appenderList = null;
+    }
+    if(list != null) {
+      for(int i = 0; i < list.length; i++) {
+	list[i].close();
       }
-      appenderList.removeAllElements();
-      appenderList = null;      
     }
   }
 
@@ -150,10 +166,11 @@ public class AppenderAttachableImpl implements AppenderAttachable {
      Remove the appender passed as parameter form the list of attached
      appenders.  */
   public
+  synchronized
   void removeAppender(Appender appender) {
     if(appender == null || appenderList == null) 
       return;
-    appenderList.removeElement(appender);    
+    removeAt(indexOf(appenderList, appender));
   }
 
 
@@ -162,15 +179,45 @@ public class AppenderAttachableImpl implements AppenderAttachable {
     list of appenders.  
   */
   public
+  synchronized
   void removeAppender(String name) {
     if(name == null || appenderList == null) return;
-    int size = appenderList.size();
-    for(int i = 0; i < size; i++) {
-      if(name.equals(((Appender)appenderList.elementAt(i)).getName())) {
-	 appenderList.removeElementAt(i);
-	 break;
-      }
+    removeAt(indexOf(appenderList, name));
+  }
+
+  /**
+     Publish a copy of the list without the appender at
+     <code>i</code>, if there is one. The caller holds the lock. */
+  private
+  void removeAt(int i) {
+    if(i < 0)
+      return;
+
+    Appender[] list = appenderList;
+    Appender[] shrunk = new Appender[list.length - 1];
+    System.arraycopy(list, 0, shrunk, 0, i);
+    System.arraycopy(list, i + 1, shrunk, i, list.length - i - 1);
+    appenderList = shrunk;
+  }
+
+  private
+  static
+  int indexOf(Appender[] list, Appender appender) {
+    for(int i = 0; i < list.length; i++) {
+      if(appender.equals(list[i]))
+	return i;
+    }
+    return -1;
+  }
+
+  private
+  static
+  int indexOf(Appender[] list, String name) {
+    for(int i = 0; i < list.length; i++) {
+      if(name.equals(list[i].getName()))
+	return i;
     }
+    return -1;
   }
 
 }
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+   An {@link OutputStreamWriter} that does its own encoding, with one
+   {@link CharsetEncoder} into one {@link ByteBuffer}, both kept for the
+   life of the writer. Characters written, whether as a String, an array
+   or a {@link CharSequence} passed to {@link #append(CharSequence)}, are
+   copied into a reusable {@link CharBuffer} and encoded from there, so
+   writing allocates nothing. The bytes go to the stream when the buffer
+   fills up and on {@link #flush}.
+
+   <p>Characters that cannot be encoded are replaced, as with
+   <code>OutputStreamWriter</code>.
+
+   @since 1.2.17
+*/
+public class ByteBufferWriter extends OutputStreamWriter {
+
+  static final int CHAR_BUFFER_SIZE = 1024;
+  static final int BYTE_BUFFER_SIZE = 8192;
+
+  private final OutputStream out;
+  private final CharsetEncoder encoder;
+  private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+  private final ByteBuffer bytes;
+  private boolean closed = false;
+
+  public
+  ByteBufferWriter(OutputStream out, Charset charset) {
+    super(out, charset);
+    this.out = out;
+    encoder = charset.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    bytes = ByteBuffer.allocate(Math.max(BYTE_BUFFER_SIZE,
+			  (int) Math.ceil(CHAR_BUFFER_SIZE * encoder.maxBytesPerChar())));
+  }
+
+  public
+  void write(int c) throws IOException {
+    synchronized(lock) {
+      ensureOpen();
+      chars.put((char) c);
+      encode(false);
+    }
+  }
+
+  public
+  void write(char[] cbuf, int off, int len) throws IOException {
+    synchronized(lock) {
+      ensureOpen();
+      while(len > 0) {
+	int n = Math.min(len, chars.remaining());
+	chars.put(cbuf, off, n);
+	off += n;
+	len -= n;
+	encode(false);
+      }
+    }
+  }
+
+  public
+  void write(String str, int off, int len) throws IOException {
+    put(str, off, off+len);
+  }
+
+  public
+  Writer append(CharSequence csq) throws IOException {
+    if(csq == null) {
+      csq = "null";
+    }
+    put(csq, 0, csq.length());
+    return this;
+  }
+
+  public
+  Writer append(CharSequence csq, int start, int end) throws IOException {
+    if(csq == null) {
+      csq = "null";
+    }
+    put(csq, start, end);
+    return this;
+  }
+
+  public
+  Writer append(char c) throws IOException {
+    write(c);
+    return this;
+  }
+
+  /**
+     Copies the characters of <code>csq</code> from <code>start</code>
+     up to <code>end</code> through the char buffer, a buffer full at a
+     time.
+  */
+  private
+  void put(CharSequence csq, int start, int end) throws IOException {
+    synchronized(lock) {
+      ensureOpen();
+      while(start < end) {
+	int n = Math.min(end - start, chars.remaining());
+	char[] dst = chars.array();
+	int at = chars.arrayOffset() + chars.position();
+
+	if(csq instanceof String) {
+	  ((String) csq).getChars(start, start+n, dst, at);
+	} else if(csq instanceof StringBuilder) {
+	  ((StringBuilder) csq).getChars(start, start+n, dst, at);
+	} else if(csq instanceof StringBuffer) {
+	  ((StringBuffer) csq).getChars(start, start+n, dst, at);
+	} else {
+	  for(int i = 0; i < n; i++) {
+	    dst[at+i] = csq.charAt(start+i);
+	  }
+	}
+
+	chars.position(chars.position() + n);
+	start += n;
+	encode(false);
+      }
+    }
+  }
+
+  /**
+     Encodes what is in the char buffer, sending the bytes to the stream
+     whenever the byte buffer fills up. Leaves behind only the first half
+     of a surrogate pair whose second half is yet to come, unless this is
+     the end of the input.
+  */
+  private
+  void encode(boolean endOfInput) throws IOException {
+    chars.flip();
+
+    while(true) {
+      CoderResult cr = encoder.encode(chars, bytes, endOfInput);
+      if(cr.isUnderflow()) {
+	break;
+      } else if(cr.isOverflow()) {
+	drain();
+      } else {
+	cr.throwException();
+      }
+    }
+
+    chars.compact();
+  }
+
+  private
+  void drain() throws IOException {
+    if(bytes.position() > 0) {
+      out.write(bytes.array(), bytes.arrayOffset(), bytes.position());
+      bytes.clear();
+    }
+  }
+
+  private
+  void ensureOpen() throws IOException {
+    if(closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  public
+  void flush() throws IOException {
+    synchronized(lock) {
+      ensureOpen();
+      drain();
+      out.flush();
+    }
+  }
+
+  public
+  void close() throws IOException {
+    synchronized(lock) {
+      if(closed) {
+	return;
+      }
+
+      try {
+	encode(true);
+	while(encoder.flush(bytes).isOverflow()) {
+	  drain();
+	}
+	drain();
+	out.flush();
+      } finally {
+	closed = true;
+	out.close();
+      }
+    }
+  }
+}
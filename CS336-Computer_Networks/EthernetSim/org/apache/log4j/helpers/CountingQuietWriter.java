@@ -50,6 +50,18 @@ public class CountingQuietWriter extends QuietWriter {
     }
   }
 
+  public
+  Writer append(CharSequence csq) {
+    try {
+      out.append(csq);
+      count += csq.length();
+    }
+    catch(IOException e) {
+      errorHandler.error("Write failure.", e, ErrorCode.WRITE_FAILURE);
+    }
+    return this;
+  }
+
   public
   long getCount() {
     return count;
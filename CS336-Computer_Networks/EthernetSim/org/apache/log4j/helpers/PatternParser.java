@@ -20,6 +20,7 @@ import org.apache.log4j.Layout;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.LocationInfo;
 import java.text.DateFormat;
+import java.text.FieldPosition;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
@@ -404,6 +405,15 @@ public class PatternParser {
       default: return null;
       }
     }
+
+    protected
+    void append(StringBuilder sbuf, LoggingEvent event) {
+      if(type == RELATIVE_TIME_CONVERTER) {
+	sbuf.append(event.timeStamp - LoggingEvent.getStartTime());
+      } else {
+	super.append(sbuf, event);
+      }
+    }
   }
 
   private static class LiteralPatternConverter extends PatternConverter {
@@ -419,6 +429,12 @@ public class PatternParser {
       sbuf.append(literal);
     }
 
+    public
+    final
+    void format(StringBuilder sbuf, LoggingEvent event) {
+      sbuf.append(literal);
+    }
+
     public
     String convert(LoggingEvent event) {
       return literal;
@@ -429,6 +445,11 @@ public class PatternParser {
     private DateFormat df;
     private Date date;
 
+    // the last date formatted by append(), kept until the time changes
+    private StringBuffer lastDate = new StringBuffer(32);
+    private long lastTime = Long.MIN_VALUE;
+    private FieldPosition fieldPosition = new FieldPosition(0);
+
     DatePatternConverter(FormattingInfo formattingInfo, DateFormat df) {
       super(formattingInfo);
       date = new Date();
@@ -447,6 +468,24 @@ public class PatternParser {
       }
       return converted;
     }
+
+    protected
+    void append(StringBuilder sbuf, LoggingEvent event) {
+      if(event.timeStamp != lastTime) {
+	date.setTime(event.timeStamp);
+	lastDate.setLength(0);
+	try {
+	  df.format(date, lastDate, fieldPosition);
+	  lastTime = event.timeStamp;
+	}
+	catch (Exception ex) {
+	  LogLog.error("Error occured while converting date.", ex);
+	  lastDate.setLength(0);
+	  lastTime = Long.MIN_VALUE;
+	}
+      }
+      sbuf.append(lastDate);
+    }
   }
 
   private static class MDCPatternConverter extends PatternConverter {
@@ -543,6 +582,27 @@ public class PatternParser {
 	return n.substring(end+1, len);
       }
     }
+
+    protected
+    void append(StringBuilder sbuf, LoggingEvent event) {
+      String n = getFullyQualifiedName(event);
+      if(n == null)
+	return;
+      if(precision <= 0) {
+	sbuf.append(n);
+	return;
+      }
+      int len = n.length();
+      int end = len -1 ;
+
+      // same as convert(), but appending the tail of the name in place
+      for(int i = precision; i > 0; i--) {
+	end = n.lastIndexOf('.', end-1);
+	if(end == -1)
+	  break;
+      }
+      sbuf.append(n, end+1, len);
+    }
   }
 
   private class ClassNamePatternConverter extends NamedPatternConverter {
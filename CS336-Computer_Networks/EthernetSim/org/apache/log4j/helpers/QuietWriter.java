@@ -53,6 +53,25 @@ public class QuietWriter extends FilterWriter {
     }
   }
 
+  /**
+     Writes <code>csq</code> through the underlying writer's own
+     <code>append</code>, which for a {@link ByteBufferWriter} means
+     without making a String of it first.
+
+     @since 1.2.17 */
+  public
+  Writer append(CharSequence csq) {
+    if (csq != null) {
+    	try {
+      		out.append(csq);
+    	} catch(Exception e) {
+      		errorHandler.error("Failed to write ["+csq+"].", e,
+			 	ErrorCode.WRITE_FAILURE);
+	    }
+    }
+    return this;
+  }
+
   public
   void flush() {
     try {
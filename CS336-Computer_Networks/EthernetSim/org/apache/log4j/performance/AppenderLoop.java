@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.AppenderAttachableImpl;
+import org.apache.log4j.spi.ErrorHandler;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   Measures how many events per second reach a set of appenders when 1
+   to 32 threads log at once. Three ways of getting there are timed
+   side by side:
+
+   <ul>
+   <li>{@link AppenderAttachableImpl#appendLoopOnAppenders} on its own,</li>
+   <li>the loop it replaced, a synchronized Vector walked with
+   <code>elementAt</code> under the lock of its owner, and</li>
+   <li>a whole <code>Logger.callAppenders</code> from a logger two
+   levels below the root, with appenders on the root and in between.</li>
+   </ul>
+
+   <p>The appenders do nothing, so what is measured is the dispatch
+   itself and how well it holds up as threads are added.
+
+   <p>Usage: <code>java org.apache.log4j.performance.AppenderLoop
+   [seconds per measurement] [appenders]</code>
+
+   @since 1.2.17 */
+public class AppenderLoop {
+
+  static final int[] THREADS = { 1, 2, 4, 8, 16, 32 };
+
+  static final String FQCN = AppenderLoop.class.getName();
+
+  public
+  static
+  void main(String[] args) throws InterruptedException {
+    double seconds = (args.length > 0) ? Double.parseDouble(args[0]) : 1;
+    int appenders = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+
+    final AppenderAttachableImpl aai = new AppenderAttachableImpl();
+    final Vector legacy = new Vector();
+
+    for(int i = 0; i < appenders; i++) {
+      Appender a = new NopAppender("nop" + i);
+      aai.addAppender(a);
+      legacy.addElement(a);
+    }
+
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    final Logger logger = h.getLogger("a.b");
+    for(int i = 0; i < appenders; i++) {
+      Appender a = new NopAppender("nop" + i);
+      if(i % 2 == 0) {
+	h.getRootLogger().addAppender(a);
+      } else {
+	h.getLogger("a").addAppender(a);
+      }
+    }
+
+    final LoggingEvent event = new LoggingEvent(FQCN, logger, Level.INFO, "message", null);
+
+    Loop copyOnWrite = new Loop() {
+	void append() {
+	  aai.appendLoopOnAppenders(event);
+	}
+      };
+
+    Loop synchronizedVector = new Loop() {
+	void append() {
+	  synchronized(legacy) {
+	    int size = legacy.size();
+	    for(int i = 0; i < size; i++) {
+	      ((Appender) legacy.elementAt(i)).doAppend(event);
+	    }
+	  }
+	}
+      };
+
+    Loop callAppenders = new Loop() {
+	void append() {
+	  logger.callAppenders(event);
+	}
+      };
+
+    // one untimed round each so the timed ones run compiled code
+    measure(copyOnWrite, 1, seconds);
+    measure(synchronizedVector, 1, seconds);
+    measure(callAppenders, 1, seconds);
+
+    System.out.println(appenders + " appenders, events per second");
+    System.out.println("threads\tcopy-on-write\tsynchronized Vector\tLogger.callAppenders");
+
+    for(int i = 0; i < THREADS.length; i++) {
+      int threads = THREADS[i];
+      System.out.println(threads + "\t" + measure(copyOnWrite, threads, seconds)
+			 + "\t" + measure(synchronizedVector, threads, seconds)
+			 + "\t" + measure(callAppenders, threads, seconds));
+    }
+  }
+
+  /**
+     Runs <code>loop</code> on <code>threads</code> threads for the
+     given time and returns the events appended per second. */
+  static
+  long measure(final Loop loop, int threads, double seconds) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    final AtomicLong total = new AtomicLong();
+
+    for(int i = 0; i < threads; i++) {
+      new Thread() {
+	public void run() {
+	  long n = 0;
+	  try {
+	    start.await();
+	    while(!loop.stop) {
+	      loop.append();
+	      n++;
+	    }
+	  } catch(InterruptedException e) {
+	    // counts what was done so far
+	  }
+	  total.addAndGet(n);
+	  done.countDown();
+	}
+      }.start();
+    }
+
+    loop.stop = false;
+    long begin = System.nanoTime();
+    start.countDown();
+    Thread.sleep((long) (seconds * 1000));
+    loop.stop = true;
+    done.await();
+    long elapsed = System.nanoTime() - begin;
+
+    return (long) (total.get() / (elapsed / 1e9));
+  }
+
+  static
+  abstract class Loop {
+    volatile boolean stop;
+
+    abstract void append();
+  }
+
+  /**
+     Takes every event and does nothing with it. */
+  static
+  class NopAppender implements Appender {
+    String name;
+
+    NopAppender(String name) {
+      this.name = name;
+    }
+
+    public void addFilter(Filter newFilter) {}
+    public Filter getFilter() { return null; }
+    public void clearFilters() {}
+    public void close() {}
+    public void doAppend(LoggingEvent event) {}
+    public String getName() { return name; }
+    public void setErrorHandler(ErrorHandler errorHandler) {}
+    public ErrorHandler getErrorHandler() { return null; }
+    public void setLayout(Layout layout) {}
+    public Layout getLayout() { return null; }
+    public void setName(String name) { this.name = name; }
+    public boolean requiresLayout() { return false; }
+  }
+}